@@ -0,0 +1,82 @@
+package com.eggheadgames.assethelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Looking up an asset in folder listings of different sizes.
+ * The regex scan is the lookup of the 1.x releases, kept as the baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AssetLookupBenchmark {
+
+    private static final String VERSION_PATTERN = "_\\d.+";
+
+    @Param({"10", "1000", "100000"})
+    public int listingSize;
+
+    private String[] listing;
+    private AssetIndex index;
+    private String fileName;
+
+    @Setup
+    public void setUp() {
+        listing = new String[listingSize];
+        for (int i = 0; i < listingSize; i++) {
+            listing[i] = "asset" + i + "_" + (i % 50) + ".db";
+        }
+        index = AssetIndex.build(listing);
+        // the worst case for a scan
+        fileName = "asset" + (listingSize - 1);
+    }
+
+    @Benchmark
+    public AssetIndex buildIndex() {
+        return AssetIndex.build(listing);
+    }
+
+    @Benchmark
+    public AssetIndex.Entry findInIndex() {
+        return index.find(fileName, "db");
+    }
+
+    @Benchmark
+    public int parseVersion() {
+        return AssetIndex.parse(listing[listingSize - 1]).version;
+    }
+
+    @Benchmark
+    public String regexScan() {
+        String regex = fileName + VERSION_PATTERN + "[.db]";
+        for (String file : listing) {
+            if (file.matches(regex) || file.matches(fileName + ".db")) {
+                return "folder" + File.separator + file;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public int regexVersion() {
+        Matcher matcher = Pattern.compile(VERSION_PATTERN).matcher(listing[listingSize - 1]);
+        if (matcher.find()) {
+            String group = matcher.group();
+            int endIndex = group.indexOf('.');
+            return Integer.parseInt(group.substring(1, endIndex < 0 ? group.length() : endIndex));
+        }
+        return 0;
+    }
+}
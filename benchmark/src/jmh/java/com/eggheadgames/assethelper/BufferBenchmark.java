@@ -0,0 +1,46 @@
+package com.eggheadgames.assethelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getting a copy buffer from the pool compared to allocating a new one for every copy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(4)
+public class BufferBenchmark {
+
+    @Param({"8192", "65536", "262144"})
+    public int bufferSize;
+
+    private BufferPool bufferPool;
+
+    @Setup
+    public void setUp() {
+        bufferPool = new BufferPool(bufferSize);
+    }
+
+    @Benchmark
+    public byte[] allocate() {
+        return new byte[bufferSize];
+    }
+
+    @Benchmark
+    public int pooled() {
+        byte[] buffer = bufferPool.acquire();
+        int length = buffer.length;
+        bufferPool.release(buffer);
+        return length;
+    }
+}
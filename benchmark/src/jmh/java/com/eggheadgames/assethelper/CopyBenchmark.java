@@ -0,0 +1,136 @@
+package com.eggheadgames.assethelper;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * End-to-end copy of a file the way assets are copied, for different file sizes.
+ * A file on disk stands in for the APK: the copy engine is the same, only AssetManager is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CopyBenchmark {
+
+    @Param({"65536", "4194304", "67108864"})
+    public int fileSize;
+
+    private File source;
+    private File compressedSource;
+    private File target;
+    private FileCopier fileCopier;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        // half random, half zeros, so the compressed variant is realistic
+        byte[] content = new byte[fileSize];
+        new Random(42).nextBytes(content);
+        for (int i = fileSize / 2; i < fileSize; i++) {
+            content[i] = 0;
+        }
+        source = File.createTempFile("benchmark", ".db");
+        FileOutputStream fos = new FileOutputStream(source);
+        fos.write(content);
+        fos.close();
+
+        compressedSource = File.createTempFile("benchmark", ".db.gz");
+        GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(compressedSource));
+        gzip.write(content);
+        gzip.close();
+
+        target = File.createTempFile("benchmark", ".copy");
+        fileCopier = new FileCopier(FileCopier.DEFAULT_BUFFER_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        source.delete();
+        compressedSource.delete();
+        target.delete();
+    }
+
+    /**
+     * The copy loop of the 1.x releases, kept as the baseline
+     */
+    @Benchmark
+    public long smallBufferLoop() throws IOException {
+        InputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            byte[] buffer = new byte[1024];
+            long copied = 0;
+            int length;
+            while ((length = is.read(buffer)) > 0) {
+                fos.write(buffer, 0, length);
+                copied += length;
+            }
+            return copied;
+        } finally {
+            is.close();
+            fos.close();
+        }
+    }
+
+    @Benchmark
+    public long pooledBuffer() throws IOException {
+        return copy(source, null, null);
+    }
+
+    @Benchmark
+    public long pooledBufferWithCrc32() throws IOException {
+        return copy(source, null, StreamDigest.create(IntegrityCheck.CRC32));
+    }
+
+    @Benchmark
+    public long pooledBufferWithSha256() throws IOException {
+        return copy(source, null, StreamDigest.create(IntegrityCheck.SHA256));
+    }
+
+    @Benchmark
+    public long gzipDecode() throws IOException {
+        return copy(compressedSource, new GzipAssetDecoder(), null);
+    }
+
+    @Benchmark
+    public long transferTo() throws IOException {
+        FileInputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            return fileCopier.transfer(is.getChannel(), 0, source.length(), fos.getChannel(), null);
+        } finally {
+            is.close();
+            fos.close();
+        }
+    }
+
+    private long copy(File file, AssetDecoder decoder, StreamDigest digest) throws IOException {
+        InputStream is = new FileInputStream(file);
+        if (decoder != null) {
+            is = decoder.decode(is);
+        }
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            return fileCopier.copy(is, fos, digest, null, -1);
+        } finally {
+            is.close();
+            fos.close();
+        }
+    }
+}
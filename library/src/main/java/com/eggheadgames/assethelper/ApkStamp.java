@@ -0,0 +1,43 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+/**
+ * Identifies the installed APK. The stamp changes whenever the app is updated,
+ * so anything derived from the APK content can be cached by it.
+ */
+final class ApkStamp {
+
+    private static volatile String cachedStamp;
+
+    private ApkStamp() {
+    }
+
+    /**
+     * The APK can't change while the process is alive, so the package manager is asked only once
+     */
+    static String get(Context context) {
+        String stamp = cachedStamp;
+        if (stamp == null) {
+            stamp = read(context);
+            cachedStamp = stamp;
+        }
+        return stamp;
+    }
+
+    static void reset() {
+        cachedStamp = null;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static String read(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            return info.versionCode + ":" + info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Process-wide cache of indexed asset folders.
+ * AssetManager.list() is slow on large APKs, so every folder is listed once per installed APK
+ * and the following lookups are map reads. Concurrent callers asking for the same folder
+ * wait for a single listing.
+ */
+class AssetCatalog {
+
+    private static final AssetCatalog sharedInstance = new AssetCatalog();
+
+    private final ConcurrentHashMap<String, FutureTask<AssetIndex>> indexes = new ConcurrentHashMap<>();
+    private final MetricsRecorder metrics = MetricsRecorder.shared();
+    private volatile String apkStamp;
+
+    static AssetCatalog shared() {
+        return sharedInstance;
+    }
+
+    /**
+     * @param assets assets of the context, listed if the folder isn't indexed yet
+     * @return index of the asset folder, listed on the first call
+     * @throws IOException if the folder can't be listed
+     */
+    AssetIndex getIndex(Context context, final AssetSource assets, final String folder) throws IOException {
+        String currentStamp = ApkStamp.get(context);
+        if (!currentStamp.equals(apkStamp)) {
+            synchronized (this) {
+                if (!currentStamp.equals(apkStamp)) {
+                    indexes.clear();
+                    apkStamp = currentStamp;
+                }
+            }
+        }
+
+        FutureTask<AssetIndex> task = indexes.get(folder);
+        boolean isListed = true;
+        if (task == null) {
+            FutureTask<AssetIndex> newTask = new FutureTask<>(new Callable<AssetIndex>() {
+                @Override
+                public AssetIndex call() throws IOException {
+                    long started = metrics.startPhase();
+                    AssetIndex index = AssetIndex.build(assets.list(folder));
+                    metrics.addPhase(AssetPhase.LIST_ASSETS, started);
+                    return index;
+                }
+            });
+            task = indexes.putIfAbsent(folder, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+                isListed = false;
+            }
+        }
+        metrics.addCatalogLookup(isListed);
+
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            // do not cache failures, the next call will try again
+            indexes.remove(folder, task);
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing " + folder);
+        }
+    }
+
+    /**
+     * Drops all listings, e.g. after new asset packs were installed
+     */
+    void invalidate() {
+        synchronized (this) {
+            indexes.clear();
+            apkStamp = null;
+        }
+        ApkStamp.reset();
+    }
+}
@@ -0,0 +1,70 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Describes a single asset for {@link AssetHelper#copyAllIfNew}
+ */
+public class AssetCopyRequest {
+
+    private final String assetFolder;
+    private final String fileName;
+    private final String destinationFolder;
+
+    /**
+     * @param assetFolder       name of folder where file is located
+     * @param fileName          a file name without version, e.g. testdatabase.sqlite for data/testdatabase_15.sqlite
+     * @param destinationFolder path to the folder where file will be stored,
+     *                          or null to store the file in context.getFilesDir()
+     */
+    public AssetCopyRequest(String assetFolder, String fileName, String destinationFolder) {
+        this.assetFolder = assetFolder;
+        this.fileName = fileName;
+        this.destinationFolder = destinationFolder;
+    }
+
+    public AssetCopyRequest(String assetFolder, String fileName) {
+        this(assetFolder, fileName, null);
+    }
+
+    public String getAssetFolder() {
+        return assetFolder;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getDestinationFolder() {
+        return destinationFolder;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AssetCopyRequest that = (AssetCopyRequest) o;
+        return equals(assetFolder, that.assetFolder)
+                && equals(fileName, that.fileName)
+                && equals(destinationFolder, that.destinationFolder);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = assetFolder != null ? assetFolder.hashCode() : 0;
+        result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
+        result = 31 * result + (destinationFolder != null ? destinationFolder.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return assetFolder + "/" + fileName + " -> " + destinationFolder;
+    }
+
+    private static boolean equals(String first, String second) {
+        return first == null ? second == null : first.equals(second);
+    }
+}
@@ -0,0 +1,40 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Handle of an asynchronous copy returned by {@link AssetHelper#copyFileToStorageAsync}
+ */
+public class AssetCopyTask {
+
+    private final IAssetHelperStorageListener listener;
+    private final IAssetHelperProgressListener progressListener;
+    private volatile boolean cancelled;
+
+    AssetCopyTask(IAssetHelperStorageListener listener, IAssetHelperProgressListener progressListener) {
+        this.listener = listener;
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Stops the copy and removes the partially copied file. The previous copy, if any, is kept.
+     * The listener is notified with {@link AssetHelperStatus#CANCELLED} in any case.
+     * <p>
+     * The copy itself stops at its next chunk only if no other caller waits for the same file.
+     * A copy which waits for another copy of the same file, e.g. in another process, or applies a patch
+     * isn't interrupted. In these cases the file may still be installed, only the listener isn't told so.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    IAssetHelperStorageListener getListener() {
+        return listener;
+    }
+
+    IAssetHelperProgressListener getProgressListener() {
+        return progressListener;
+    }
+}
@@ -0,0 +1,22 @@
+package com.eggheadgames.assethelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes a compressed asset while it's copied, e.g. catalog_12.sqlite.gz is installed as catalog.sqlite.
+ * Gzip is supported out of the box, other formats can be added with {@link AssetHelper#registerDecoder(AssetDecoder)}.
+ */
+public interface AssetDecoder {
+
+    /**
+     * @return extension of the compressed assets without the dot, e.g. "gz"
+     */
+    String getExtension();
+
+    /**
+     * @param in compressed asset stream, closed together with the returned stream
+     * @return stream of the decoded bytes
+     */
+    InputStream decode(InputStream in) throws IOException;
+}
@@ -0,0 +1,117 @@
+package com.eggheadgames.assethelper;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Access to an asset which is copied to the file system only when a real file is needed,
+ * returned by {@link AssetHelper#open}.
+ * <p>
+ * Assets read once as a stream don't need a copy at all: they are read straight from the APK.
+ * {@link #getFile()} copies the asset the same way as {@link AssetHelper#copyIfNew} does, e.g. for SQLite.
+ * <p>
+ * The copy is kept within the storage budget, see {@link AssetHelper#setStorageBudget}, until the handle is closed.
+ */
+public class AssetHandle implements Closeable {
+
+    public enum Backing {
+        /**
+         * The asset is stored uncompressed in the APK and can be opened as a file descriptor range
+         */
+        ASSET_FD,
+        /**
+         * The asset is compressed in the APK and can be read only as a stream
+         */
+        ASSET_STREAM,
+        /**
+         * An up to date copy of the asset is in the file system
+         */
+        FILE
+    }
+
+    private final AssetHelper assetHelper;
+    private final String assetFolder;
+    private final String fileName;
+    private final String destinationFolder;
+    private volatile Backing backing;
+    private boolean closed;
+
+    AssetHandle(AssetHelper assetHelper, String assetFolder, String fileName, String destinationFolder, Backing backing) {
+        this.assetHelper = assetHelper;
+        this.assetFolder = assetFolder;
+        this.fileName = fileName;
+        this.destinationFolder = destinationFolder;
+        this.backing = backing;
+    }
+
+    public Backing getBacking() {
+        return backing;
+    }
+
+    /**
+     * Opens the asset inside the APK. Use {@link AssetFileDescriptor#getStartOffset()} and
+     * {@link AssetFileDescriptor#getLength()} to read its range, e.g. with MediaPlayer.
+     *
+     * @throws IllegalStateException if the backing is not {@link Backing#ASSET_FD}
+     */
+    public AssetFileDescriptor openFd() throws IOException {
+        if (backing != Backing.ASSET_FD) {
+            throw new IllegalStateException("The asset can not be opened as a file descriptor. Backing: " + backing);
+        }
+        return assetHelper.openAssetFd(assetFolder, fileName);
+    }
+
+    /**
+     * Opens the copied file or, if there is no up to date copy, the asset itself without copying it
+     */
+    public InputStream openInputStream() throws IOException {
+        if (backing == Backing.FILE) {
+            return new FileInputStream(getPath());
+        }
+        return assetHelper.openAssetStream(assetFolder, fileName);
+    }
+
+    /**
+     * Copies the asset to the file system unless an up to date copy is there already.
+     * The backing is {@link Backing#FILE} afterwards.
+     *
+     * @throws RuntimeException same as {@link AssetHelper#copyIfNew}, or if the copy didn't match its checksum
+     *                          or there was no room for it
+     */
+    public synchronized File getFile() throws RuntimeException {
+        File file = new File(getPath());
+        if (backing == Backing.FILE && file.exists()) {
+            return file;
+        }
+        CopyFileToStorageResult result = assetHelper.copyIfNew(assetFolder, fileName, destinationFolder);
+        if (result.getStatus() == AssetHelperStatus.CORRUPTED || result.getStatus() == AssetHelperStatus.NOT_ENOUGH_SPACE) {
+            throw new RuntimeException("The asset was not copied. Status: " + result.getStatus() + ", path: " + result.getPathToFile());
+        }
+        backing = Backing.FILE;
+        return new File(result.getPathToFile());
+    }
+
+    /**
+     * Lets the copy be removed when it doesn't fit into the storage budget anymore. The handle can still be used,
+     * the asset is copied again if needed
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            assetHelper.releaseFile(getPath());
+        }
+    }
+
+    /**
+     * @return path where the asset is copied to, the file might not exist yet
+     */
+    public String getPath() {
+        return destinationFolder + File.separator + fileName;
+    }
+}
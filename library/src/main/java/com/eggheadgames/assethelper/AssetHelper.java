@@ -2,14 +2,48 @@ package com.eggheadgames.assethelper;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
 import android.os.Handler;
 import android.os.Looper;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 public class AssetHelper {
+    private static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 100;
+
     @SuppressLint("StaticFieldLeak")
     protected static final AssetHelper instance = new AssetHelper();
-    protected Context mContext;
-    protected OsUtil mOsUtil;
+    protected volatile Context mContext;
+    protected volatile OsUtil mOsUtil;
+    private final Set<String> mCleanedFolders = new HashSet<>();
+    private final Map<String, InFlightCopy> mInFlightCopies = new HashMap<>();
+    private final PathLocks mDestinationLocks = new PathLocks();
+    private final AssetPrewarmer mPrewarmer = new AssetPrewarmer(new NamedThreadFactory("AssetHelper-prewarm"));
+    private final StorageBudget mStorageBudget = new StorageBudget(mDestinationLocks,
+            Executors.newSingleThreadExecutor(new NamedThreadFactory("AssetHelper-evict")));
+    private final MetricsRecorder mMetrics = MetricsRecorder.shared();
+    private final AtomicLong mFastPathHits = new AtomicLong();
+    private final AtomicLong mFastPathMisses = new AtomicLong();
+    private Executor mCopyExecutor;
+    private Executor mCallbackExecutor;
+    private volatile IntegrityCheck mIntegrityCheck = IntegrityCheck.NONE;
+    private volatile long mProgressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
 
     /**
      * Please consider using Application Context as a @param context
@@ -17,7 +51,12 @@ public class AssetHelper {
     public static AssetHelper getInstance(Context context) {
         Context applicationContext = context.getApplicationContext();
         instance.mContext = applicationContext == null ? context : applicationContext;
-        instance.mOsUtil = new OsUtil();
+        synchronized (instance) {
+            // created once, so settings like the integrity check aren't lost by a later call
+            if (instance.mOsUtil == null) {
+                instance.mOsUtil = new OsUtil();
+            }
+        }
         return instance;
     }
 
@@ -39,7 +78,14 @@ public class AssetHelper {
      *                          or file was not written to the filesystem
      */
     public CopyFileToStorageResult copyIfNew(String assetFolder, String fileName, final String destinationFolder) throws RuntimeException {
-        return loadFileToStorage(assetFolder, fileName, destinationFolder);
+        return copyIfNew(assetFolder, fileName, destinationFolder, false);
+    }
+
+    /**
+     * @param isBatch whether the copy is a part of a batch, which writes the versions of all its files at its end
+     */
+    CopyFileToStorageResult copyIfNew(String assetFolder, String fileName, String destinationFolder, boolean isBatch) throws RuntimeException {
+        return loadPrewarmedFileToStorage(assetFolder, fileName, destinationFolder, isBatch);
     }
 
     public CopyFileToStorageResult copyIfNew(String assetFolder, String fileName) throws RuntimeException {
@@ -49,7 +95,8 @@ public class AssetHelper {
 
     /**
      * Loads an asset to the file system.
-     * Path to the file will be returned via a callback
+     * Path to the file will be returned via a callback.
+     * If the same destination file is being copied already, the listener gets the result of that copy
      * <p>
      * P.S. The file will be stored by the following path:
      * context.getFilesDir() + File.separator + fileName + ".yyy"
@@ -59,50 +106,499 @@ public class AssetHelper {
      *                          e.g. if you have an asset file data/testdatabase_15.sqlite
      *                          then you should specify testdatabase.sqlite as a fileName
      * @param destinationFolder relative path to the folder where file will be stored
-     * @param listener          will notify about the status
-     * @throws RuntimeException in case if specified fileName is empty,
-     *                          or assets with specified name not found,
-     *                          or file was not written to the filesystem
+     * @param listener          will notify about the status. If the file name is empty, the asset is not found
+     *                          or the file can't be written, the status is {@link AssetHelperStatus#FAILED}
+     * @param progressListener  will notify about the copied bytes, not more often than {@link #setProgressInterval}
+     * @return task which can be used to cancel the copy
      */
-    public void copyFileToStorageAsync(final String fileFolder, final String fileName, final String destinationFolder,
-                                       final IAssetHelperStorageListener listener) throws RuntimeException {
-        new Thread(new Runnable() {
+    public AssetCopyTask copyFileToStorageAsync(final String fileFolder, final String fileName, final String destinationFolder,
+                                                final IAssetHelperStorageListener listener,
+                                                IAssetHelperProgressListener progressListener) throws RuntimeException {
+        final String key = getCopyKey(destinationFolder, fileName);
+        final InFlightCopy inFlightCopy;
+        AssetCopyTask task;
+        synchronized (mInFlightCopies) {
+            InFlightCopy running = mInFlightCopies.get(key);
+            if (running != null) {
+                // the same file is being copied already, its result will be shared.
+                // A copy cancelled by all its callers may be stopping already, a new one is started instead
+                task = running.addTaskUnlessCancelled(listener, progressListener);
+                if (task != null) {
+                    return task;
+                }
+            }
+            inFlightCopy = new InFlightCopy(key, getCallbackExecutor(), mProgressIntervalMillis);
+            task = inFlightCopy.addTaskUnlessCancelled(listener, progressListener);
+            mInFlightCopies.put(key, inFlightCopy);
+        }
+
+        getCopyExecutor().execute(new Runnable() {
             @Override
             public void run() {
-                final CopyFileToStorageResult result = loadFileToStorage(fileFolder, fileName, destinationFolder);
-
-                new Handler(Looper.getMainLooper()).post(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onLoadedToStorage(result.getPathToFile(), result.getStatus());
+                CopyFileToStorageResult result;
+                try {
+                    if (inFlightCopy.isCancelled()) {
+                        result = new CopyFileToStorageResult(key, AssetHelperStatus.CANCELLED);
+                    } else {
+                        result = loadFileToStorage(fileFolder, fileName, destinationFolder, inFlightCopy, false);
                     }
-                });
+                } catch (RuntimeException e) {
+                    // every caller sharing the copy is told, nobody would see it thrown on a pool thread
+                    e.printStackTrace();
+                    result = new CopyFileToStorageResult(key, e);
+                } finally {
+                    synchronized (mInFlightCopies) {
+                        // a cancelled copy may have been replaced by a new one already
+                        if (mInFlightCopies.get(key) == inFlightCopy) {
+                            mInFlightCopies.remove(key);
+                        }
+                    }
+                }
+                inFlightCopy.deliver(result);
+            }
+        });
+        return task;
+    }
+
+    public AssetCopyTask copyFileToStorageAsync(final String fileFolder, final String fileName, final String destinationFolder,
+                                                final IAssetHelperStorageListener listener) throws RuntimeException {
+        return copyFileToStorageAsync(fileFolder, fileName, destinationFolder, listener, null);
+    }
+
+    public AssetCopyTask copyFileToStorageAsync(final String fileFolder, final String fileName, final IAssetHelperStorageListener listener) throws RuntimeException {
+        return copyFileToStorageAsync(fileFolder, fileName, mContext.getFilesDir().getAbsolutePath(), listener);
+    }
+
+    /**
+     * Gives access to an asset without copying it. The asset is read straight from the APK
+     * until {@link AssetHandle#getFile()} is called, unless an up to date copy exists already.
+     *
+     * @param assetFolder       name of folder where file is located
+     * @param fileName          a file name without version, e.g. testdatabase.sqlite for data/testdatabase_15.sqlite
+     * @param destinationFolder folder where the file is copied when a real file is needed
+     * @throws RuntimeException in case if specified fileName is empty or assets with specified name not found
+     */
+    public AssetHandle open(String assetFolder, String fileName, String destinationFolder) throws RuntimeException {
+        if (mOsUtil.isEmpty(fileName)) {
+            throw new RuntimeException("The file name is empty");
+        }
+        String name = getName(fileName);
+        String extension = getExtension(fileName);
+        if (!mOsUtil.isFileAssetExists(mContext, assetFolder, name, extension)) {
+            throw new RuntimeException("An asset for requested file doesn't exist");
+        }
+
+        // the copy is kept from now on, so it can't be removed between the version check and its use
+        String path = destinationFolder + File.separator + fileName;
+        mStorageBudget.acquire(path);
+        AssetHandle.Backing backing;
+        try {
+            Integer currentFileVersion = mOsUtil.getCurrentFileVersion(mContext, path);
+            if (mOsUtil.isFileUpToDate(mContext, destinationFolder, fileName) || currentFileVersion != null
+                    && currentFileVersion >= mOsUtil.getAssetsFileVersion(mContext, assetFolder, name, extension)) {
+                backing = AssetHandle.Backing.FILE;
+                mStorageBudget.onAccess(mContext, mOsUtil, path);
+            } else if (mOsUtil.isAssetUncompressed(mContext, assetFolder, name, extension)) {
+                backing = AssetHandle.Backing.ASSET_FD;
+            } else {
+                backing = AssetHandle.Backing.ASSET_STREAM;
             }
-        }).start();
+        } catch (RuntimeException e) {
+            mStorageBudget.release(path);
+            throw e;
+        }
+        return new AssetHandle(this, assetFolder, fileName, destinationFolder, backing);
+    }
+
+    public AssetHandle open(String assetFolder, String fileName) throws RuntimeException {
+        return open(assetFolder, fileName, mContext.getFilesDir().getAbsolutePath());
+    }
+
+    /**
+     * Copies the asset if it's new and maps the copy into memory, see {@link MappedAsset}.
+     * The mapping is shared and reused until a new version of the file is installed.
+     * This method does process in the UI thread when the asset has to be copied
+     *
+     * @throws IOException if the file can't be mapped, or the copy didn't match its checksum or there was no room for it
+     */
+    public MappedAsset map(String assetFolder, String fileName, String destinationFolder) throws IOException {
+        CopyFileToStorageResult result = loadFileToStorage(assetFolder, fileName, destinationFolder, null, false);
+        if (result.getStatus() == AssetHelperStatus.CORRUPTED || result.getStatus() == AssetHelperStatus.NOT_ENOUGH_SPACE) {
+            throw new IOException("The asset was not copied. Status: " + result.getStatus() + ", path: " + result.getPathToFile());
+        }
+        return mOsUtil.mapFile(mContext, result.getPathToFile());
+    }
+
+    public MappedAsset map(String assetFolder, String fileName) throws IOException {
+        return map(assetFolder, fileName, mContext.getFilesDir().getAbsolutePath());
     }
 
-    public void copyFileToStorageAsync(final String fileFolder, final String fileName, final IAssetHelperStorageListener listener) throws RuntimeException {
-        copyFileToStorageAsync(fileFolder, fileName, mContext.getFilesDir().getAbsolutePath(), listener);
+    AssetFileDescriptor openAssetFd(String assetFolder, String fileName) throws IOException {
+        return mOsUtil.openAssetFd(mContext, assetFolder, getName(fileName), getExtension(fileName));
     }
 
-    private CopyFileToStorageResult loadFileToStorage(String assetFolder, String fileName, String destinationFolder) throws RuntimeException {
+    InputStream openAssetStream(String assetFolder, String fileName) throws IOException {
+        return mOsUtil.openAssetStream(mContext, assetFolder, getName(fileName), getExtension(fileName));
+    }
+
+    void releaseFile(String path) {
+        mStorageBudget.release(path);
+    }
+
+    /**
+     * Loads several assets to the file system in parallel.
+     * This method blocks till all the files are processed. Try to call it from the background thread
+     * or use {@link #copyAllIfNewAsync}
+     *
+     * @param requests assets to load
+     * @return results in the order of requests. A file which can't be loaded doesn't stop the rest of the batch,
+     * it gets a {@link AssetHelperStatus#FAILED} result with the error
+     */
+    public Map<AssetCopyRequest, CopyFileToStorageResult> copyAllIfNew(List<AssetCopyRequest> requests) {
+        List<FutureTask<CopyFileToStorageResult>> futures = new ArrayList<>(requests.size());
+        for (AssetCopyRequest request : requests) {
+            FutureTask<CopyFileToStorageResult> future = new FutureTask<>(createCopyTask(request, true));
+            getCopyExecutor().execute(future);
+            futures.add(future);
+        }
+
+        Map<AssetCopyRequest, CopyFileToStorageResult> results = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            AssetCopyRequest request = requests.get(i);
+            try {
+                results.put(request, futures.get(i).get());
+            } catch (ExecutionException e) {
+                results.put(request, createFailedResult(request, e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+        mOsUtil.flushFileVersions(mContext);
+        return results;
+    }
+
+    /**
+     * Loads several assets to the file system in parallel.
+     * Results will be returned via a single callback once all files are processed
+     *
+     * @param requests assets to load
+     * @param listener will be notified with results in the order of requests.
+     *                 A file which can't be loaded gets a {@link AssetHelperStatus#FAILED} result with the error
+     */
+    public void copyAllIfNewAsync(final List<AssetCopyRequest> requests, final IAssetHelperBatchListener listener) {
+        final Map<AssetCopyRequest, CopyFileToStorageResult> results = new LinkedHashMap<>();
+        for (AssetCopyRequest request : requests) {
+            // reserve the position of every request, the map is filled up by workers
+            results.put(request, null);
+        }
+        if (requests.isEmpty()) {
+            onBatchCompleted(results, listener);
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(requests.size());
+        for (final AssetCopyRequest request : requests) {
+            final Callable<CopyFileToStorageResult> task = createCopyTask(request, true);
+            getCopyExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    CopyFileToStorageResult result;
+                    try {
+                        result = task.call();
+                    } catch (Exception e) {
+                        result = createFailedResult(request, e);
+                    }
+                    synchronized (results) {
+                        results.put(request, result);
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        mOsUtil.flushFileVersions(mContext);
+                        onBatchCompleted(results, listener);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Mirrors an asset folder with all its subfolders to the file system, e.g. a tree of map tiles.
+     * Folders are listed and files are copied in parallel on the pool set with {@link #setCopyExecutor}.
+     * Only new and updated files are copied, the rest is checked against the stored versions.
+     * This method blocks till the whole tree is processed, call it from a background thread
+     * other than the copy pool.
+     * <p>
+     * Asset folders are recognized by names without an extension and a version.
+     *
+     * @param assetFolder       asset folder to mirror, e.g. tiles
+     * @param destinationFolder folder which gets the same structure, the file names don't have versions
+     * @param deleteStale       whether to remove copied files whose assets don't exist anymore.
+     *                          Only files AssetHelper copied from this asset folder or its subfolders are removed
+     * @return counts of files by status, removed files and copied bytes.
+     *                          Files which can't be copied are listed in {@link FolderSyncResult#getFailures()}
+     * @throws RuntimeException if a folder can't be listed, after the rest of the tree is processed.
+     *                          Nothing is removed then
+     */
+    public FolderSyncResult syncFolder(String assetFolder, String destinationFolder, boolean deleteStale) throws RuntimeException {
+        return new FolderSync(this, mOsUtil, mContext, getCopyExecutor(), mDestinationLocks).run(assetFolder, destinationFolder, deleteStale);
+    }
+
+    public FolderSyncResult syncFolder(String assetFolder, boolean deleteStale) throws RuntimeException {
+        return syncFolder(assetFolder, mContext.getFilesDir().getAbsolutePath() + File.separator + assetFolder, deleteStale);
+    }
+
+    /**
+     * Registers assets to be installed in the background before they are requested,
+     * e.g. right after the app start. Assets are copied one at a time on a low priority thread,
+     * the highest priority first and in the order of registration for the same priority.
+     * <p>
+     * {@link #copyIfNew} and {@link #copyAllIfNew} for a registered asset take over its queued copy,
+     * or wait for the running one, instead of copying the file again.
+     * An asset registered again with a higher priority moves up the queue.
+     *
+     * @param requests assets to install
+     * @param priority a higher number is installed earlier
+     */
+    public void prewarm(List<AssetCopyRequest> requests, int priority) {
+        for (AssetCopyRequest request : requests) {
+            String destinationFolder = getDestinationFolder(request);
+            mPrewarmer.submit(getCopyKey(destinationFolder, request.getFileName()), priority, createCopyTask(request, false));
+        }
+    }
+
+    public void prewarm(List<AssetCopyRequest> requests) {
+        prewarm(requests, 0);
+    }
+
+    /**
+     * Drops the registered assets which are not being copied yet
+     */
+    public void cancelPrewarm() {
+        mPrewarmer.cancelQueued();
+    }
+
+    /**
+     * Limits the size of all the copied files, e.g. optional assets on devices with little storage.
+     * Once the copied files take more room, the least recently requested ones are removed
+     * in the background and their versions are forgotten, so the next {@link #copyIfNew} copies them again.
+     * <p>
+     * Pinned files, mapped files, files held by an open {@link AssetHandle} and files being copied are never removed.
+     * Files requested before the budget was set count as used when they were copied.
+     *
+     * @param bytes size limit of the copied files, or 0 for no limit, which is the default
+     */
+    public void setStorageBudget(long bytes) {
+        mStorageBudget.setBudget(bytes);
+        mStorageBudget.scheduleTrim(mContext, mOsUtil);
+    }
+
+    /**
+     * Keeps a copied file, or all the files in a folder, within the storage budget.
+     * Pins are not stored, set them again after the process start before the files are requested
+     *
+     * @param path path of a copied file or a destination folder
+     */
+    public void pin(String path) {
+        mStorageBudget.pin(path);
+    }
+
+    public void unpin(String path) {
+        mStorageBudget.unpin(path);
+    }
+
+    /**
+     * Removes the least recently requested files till the rest fits into the storage budget.
+     * This method blocks, the files are also trimmed in the background after every copy
+     *
+     * @return number of removed files
+     */
+    public int trimStorage() {
+        return mStorageBudget.trim(mContext, mOsUtil);
+    }
+
+    /**
+     * Sets the executor used to load files in the background.
+     * By default a fixed pool is used, sized to the number of cores but not more than 4 threads,
+     * as flash storage doesn't get faster with more concurrent writers
+     */
+    public synchronized void setCopyExecutor(Executor executor) {
+        mCopyExecutor = executor;
+    }
+
+    /**
+     * Sets the executor used to deliver results of asynchronous calls. The main thread is used by default
+     */
+    public synchronized void setCallbackExecutor(Executor executor) {
+        mCallbackExecutor = executor;
+    }
+
+    /**
+     * Asset folders are listed once per installed APK and cached for the whole process.
+     * Call this method if assets can change while the app is running, e.g. after installing asset packs
+     */
+    public void invalidateAssetCatalog() {
         mOsUtil.clearCache();
+    }
 
+    /**
+     * Once a file is checked, the check is skipped till the app is updated or the file is removed.
+     *
+     * @return number of calls answered without looking at the assets
+     */
+    public long getFastPathHits() {
+        return mFastPathHits.get();
+    }
+
+    /**
+     * @return number of calls which had to look at the assets
+     */
+    public long getFastPathMisses() {
+        return mFastPathMisses.get();
+    }
+
+    /**
+     * Starts collecting timings of every phase, copied bytes and outcomes, see {@link #getMetrics()}.
+     * While disabled, which is the default, the metrics cost a single flag check per phase
+     */
+    public void setMetricsEnabled(boolean enabled) {
+        mMetrics.setEnabled(enabled);
+    }
+
+    /**
+     * Reports the metrics of every processed file, e.g. to forward them to your telemetry.
+     * The metrics are collected while a listener is set, even if they are not enabled
+     *
+     * @param listener listener or null to remove it
+     */
+    public void setMetricsListener(IAssetHelperMetricsListener listener) {
+        mMetrics.setListener(listener);
+    }
+
+    /**
+     * @return metrics collected since they were enabled or reset
+     */
+    public AssetHelperMetrics getMetrics() {
+        return mMetrics.snapshot(mFastPathHits.get(), mFastPathMisses.get());
+    }
+
+    public void resetMetrics() {
+        mMetrics.reset();
+    }
+
+    /**
+     * Enables a checksum computed while files are copied and stored with their versions.
+     * With a checksum enabled a copy is also checked for a changed size or modification time
+     * before it's reported as up to date, and replaced if it was damaged.
+     * <p>
+     * Assets shipped with a .sha256 file, e.g. data_15.db.sha256 next to data_15.db,
+     * are always checked against it. A copy which doesn't match is reported as {@link AssetHelperStatus#CORRUPTED}
+     *
+     * @param integrityCheck {@link IntegrityCheck#NONE} by default, which allows the fastest copy
+     */
+    public void setIntegrityCheck(IntegrityCheck integrityCheck) {
+        mIntegrityCheck = integrityCheck;
+        mOsUtil.setIntegrityCheck(integrityCheck);
+    }
+
+    /**
+     * Adds a decoder for compressed assets, e.g. for zstd or xz with a library of your choice.
+     * A compressed asset like catalog_12.sqlite.gz is installed as catalog.sqlite with the same versioning rules.
+     * Gzip is registered by default
+     */
+    public void registerDecoder(AssetDecoder decoder) {
+        mOsUtil.registerDecoder(decoder);
+    }
+
+    /**
+     * Sets the space which has to stay free on the destination volume after a copy.
+     * A file which doesn't fit is not copied and reported as {@link AssetHelperStatus#NOT_ENOUGH_SPACE}
+     *
+     * @param headroom space in bytes, 10 MB by default
+     */
+    public void setFreeSpaceHeadroom(long headroom) {
+        mOsUtil.setFreeSpaceHeadroom(headroom);
+    }
+
+    /**
+     * Checks a file copied by this helper.
+     *
+     * @param pathToFile path returned in {@link CopyFileToStorageResult#getPathToFile()}
+     * @param rehash     false to compare only the size and modification time,
+     *                   true to also read the whole file and compare its checksum
+     * @return false if the file was never copied, or was changed or damaged since then
+     */
+    public boolean verifyFile(String pathToFile, boolean rehash) {
+        return mOsUtil.isFileIntact(mContext, pathToFile, rehash);
+    }
+
+    /**
+     * Sets how often the progress of asynchronous copies is reported
+     *
+     * @param intervalMillis minimal interval between two progress updates, 100 ms by default
+     */
+    public void setProgressInterval(long intervalMillis) {
+        mProgressIntervalMillis = intervalMillis;
+    }
+
+    /**
+     * Sets the size of the buffer used to copy compressed assets.
+     * Uncompressed assets are copied by the kernel and do not use this buffer.
+     *
+     * @param bufferSize buffer size in bytes, 64 KB by default
+     */
+    public void setCopyBufferSize(int bufferSize) {
+        FileCopier.shared().setBufferSize(bufferSize);
+    }
+
+    private CopyFileToStorageResult loadPrewarmedFileToStorage(String assetFolder, String fileName, String destinationFolder,
+                                                               boolean isBatch) throws RuntimeException {
+        if (!mOsUtil.isEmpty(fileName)) {
+            CopyFileToStorageResult result = mPrewarmer.claim(getCopyKey(destinationFolder, fileName));
+            if (result != null) {
+                return result;
+            }
+        }
+        return loadFileToStorage(assetFolder, fileName, destinationFolder, null, isBatch);
+    }
+
+    /**
+     * @param isBatch whether the copy is a part of a batch, which writes the versions of all its files at its end.
+     *                A single copy writes the version before it releases the destination lock
+     */
+    private CopyFileToStorageResult loadFileToStorage(String assetFolder, String fileName, String destinationFolder,
+                                                      CopyProgress progress, boolean isBatch) throws RuntimeException {
+        OperationTimer timer = mMetrics.startOperation();
+        CopyFileToStorageResult result = loadFileToStorage(assetFolder, fileName, destinationFolder, progress, isBatch, timer);
+        timer.finish(result);
+        if (mStorageBudget.isEnabled()) {
+            if (result.getStatus() == AssetHelperStatus.INSTALLED || result.getStatus() == AssetHelperStatus.UPDATED) {
+                mStorageBudget.scheduleTrim(mContext, mOsUtil);
+            } else if (result.getStatus() == AssetHelperStatus.IGNORED) {
+                mStorageBudget.onAccess(mContext, mOsUtil, result.getPathToFile());
+            }
+        }
+        return result;
+    }
+
+    private CopyFileToStorageResult loadFileToStorage(String assetFolder, String fileName, String destinationFolder,
+                                                      CopyProgress progress, boolean isBatch, OperationTimer timer) throws RuntimeException {
         if (mOsUtil.isEmpty(fileName)) {
             throw new RuntimeException("The file name is empty");
         }
 
-        String name;
-        String extension = null;
-        int indexOfDot = fileName.lastIndexOf(".");
-        if (indexOfDot == -1) {
-            name = fileName;
-        } else {
-            name = fileName.substring(0, indexOfDot);
-            extension = fileName.substring(indexOfDot + 1);
+        if (mOsUtil.isFileUpToDate(mContext, destinationFolder, fileName)) {
+            // the file was checked against the installed APK already, there is nothing new in the assets
+            mFastPathHits.incrementAndGet();
+            return new CopyFileToStorageResult(destinationFolder + File.separator + fileName, AssetHelperStatus.IGNORED);
         }
+        mFastPathMisses.incrementAndGet();
 
-        if (!mOsUtil.isFileAssetExists(mContext, assetFolder, name, extension)) {
+        String name = getName(fileName);
+        String extension = getExtension(fileName);
+
+        long phaseStart = timer.startPhase();
+        boolean isAssetFound = mOsUtil.isFileAssetExists(mContext, assetFolder, name, extension);
+        timer.endPhase(AssetPhase.FIND_ASSET, phaseStart);
+        if (!isAssetFound) {
             throw new RuntimeException("An asset for requested file doesn't exist");
         }
 
@@ -111,20 +607,179 @@ public class AssetHelper {
             throw new RuntimeException("Can't generate destination file path");
         }
 
+        deleteOrphanedTempFilesOnce(destinationFolder);
+
+        // a single writer per destination, copies of different files run in parallel.
+        // Threads of this process are serialized first, a process can't wait for its own file lock
+        phaseStart = timer.startPhase();
+        mDestinationLocks.lock(destinationFilePath);
+        try {
+            ProcessLock processLock = mOsUtil.lockDestination(mContext, destinationFilePath);
+            timer.endPhase(AssetPhase.LOCK_WAIT, phaseStart);
+            try {
+                CopyFileToStorageResult result = installFile(assetFolder, name, extension, destinationFilePath, progress, timer);
+                if (processLock != null && !isBatch && (result.getStatus() == AssetHelperStatus.INSTALLED
+                        || result.getStatus() == AssetHelperStatus.UPDATED)) {
+                    // a process waiting for the lock reads the version then instead of copying the file again
+                    mOsUtil.flushFileVersions(mContext);
+                }
+                return result;
+            } finally {
+                if (processLock != null) {
+                    processLock.release();
+                }
+            }
+        } finally {
+            mDestinationLocks.unlock(destinationFilePath);
+        }
+    }
+
+    /**
+     * Must be called under the destination locks. A caller which waited for another copy of the same file,
+     * in this or another process, reads the version that copy stored and doesn't copy the file again
+     */
+    private CopyFileToStorageResult installFile(String assetFolder, String name, String extension, String destinationFilePath,
+                                                CopyProgress progress, OperationTimer timer) {
+        long phaseStart = timer.startPhase();
         Integer currentFileVersion = mOsUtil.getCurrentFileVersion(mContext, destinationFilePath);
         int assetsFileVersion = mOsUtil.getAssetsFileVersion(mContext, assetFolder, name, extension);
+        timer.endPhase(AssetPhase.READ_VERSION, phaseStart);
 
         boolean isVersionAvailable = currentFileVersion == null || assetsFileVersion > currentFileVersion;
-        if (isVersionAvailable) {
-            String pathToFile = mOsUtil.loadFileToLocalStorage(mContext, assetFolder, name, extension, destinationFilePath);
+        // a damaged copy of the current version is replaced the same way as an old one
+        boolean isCopyDamaged = !isVersionAvailable && mIntegrityCheck != IntegrityCheck.NONE
+                && !mOsUtil.isFileIntact(mContext, destinationFilePath, false);
+        if (currentFileVersion != null && isVersionAvailable) {
+            phaseStart = timer.startPhase();
+            boolean isPatched = mOsUtil.applyPatch(mContext, assetFolder, name, currentFileVersion, assetsFileVersion, destinationFilePath);
+            timer.endPhase(AssetPhase.PATCH, phaseStart);
+            if (isPatched) {
+                mOsUtil.storeFileVersion(mContext, assetFolder, assetsFileVersion, destinationFilePath);
+                return new CopyFileToStorageResult(destinationFilePath, AssetHelperStatus.UPDATED);
+            }
+        }
+        if (isVersionAvailable || isCopyDamaged) {
+            String pathToFile;
+            phaseStart = timer.startPhase();
+            try {
+                pathToFile = mOsUtil.loadFileToLocalStorage(mContext, assetFolder, name, extension, destinationFilePath, progress);
+            } catch (AssetIntegrityException e) {
+                return new CopyFileToStorageResult(destinationFilePath, AssetHelperStatus.CORRUPTED);
+            } catch (CopyCancelledException e) {
+                return new CopyFileToStorageResult(destinationFilePath, AssetHelperStatus.CANCELLED);
+            } catch (InsufficientStorageException e) {
+                return new CopyFileToStorageResult(destinationFilePath, AssetHelperStatus.NOT_ENOUGH_SPACE);
+            } finally {
+                timer.endPhase(AssetPhase.COPY, phaseStart);
+            }
             if (mOsUtil.isEmpty(pathToFile)) {
                 throw new RuntimeException("Can't find copied file");
             }
-            mOsUtil.storeFileVersion(mContext, assetsFileVersion, destinationFilePath);
+            if (timer.isEnabled()) {
+                timer.setBytesCopied(new File(pathToFile).length());
+            }
+            // the file has been renamed into place, only now it is safe to remember its version
+            mOsUtil.storeFileVersion(mContext, assetFolder, assetsFileVersion, destinationFilePath);
             return new CopyFileToStorageResult(pathToFile, currentFileVersion == null ? AssetHelperStatus.INSTALLED : AssetHelperStatus.UPDATED);
         } else {
             //do not update
+            mOsUtil.markFileUpToDate(mContext, destinationFilePath);
             return new CopyFileToStorageResult(destinationFilePath, AssetHelperStatus.IGNORED);
         }
     }
+
+    private static String getName(String fileName) {
+        int indexOfDot = fileName.lastIndexOf(".");
+        return indexOfDot == -1 ? fileName : fileName.substring(0, indexOfDot);
+    }
+
+    private static String getExtension(String fileName) {
+        int indexOfDot = fileName.lastIndexOf(".");
+        return indexOfDot == -1 ? null : fileName.substring(indexOfDot + 1);
+    }
+
+    /**
+     * Temp files are left behind only when a copy was interrupted, so it's enough to look for them
+     * the first time a folder is used after the process start
+     */
+    private void deleteOrphanedTempFilesOnce(String destinationFolder) {
+        String folderKey;
+        try {
+            // the same folder can be reached through several paths, e.g. /data/data and /data/user/0
+            folderKey = new File(destinationFolder).getCanonicalPath();
+        } catch (IOException e) {
+            folderKey = new File(destinationFolder).getAbsolutePath();
+        }
+        synchronized (mCleanedFolders) {
+            if (mCleanedFolders.add(folderKey)) {
+                mOsUtil.deleteOrphanedTempFiles(destinationFolder);
+            }
+        }
+    }
+
+    /**
+     * Versions of the copied files are written in the background or by the batch once it's done
+     *
+     * @param claimPrewarmed false for the prewarm copy itself, it would wait for itself otherwise
+     */
+    private Callable<CopyFileToStorageResult> createCopyTask(final AssetCopyRequest request, final boolean claimPrewarmed) {
+        final String destinationFolder = getDestinationFolder(request);
+        return new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() {
+                if (claimPrewarmed) {
+                    return loadPrewarmedFileToStorage(request.getAssetFolder(), request.getFileName(), destinationFolder, true);
+                }
+                return loadFileToStorage(request.getAssetFolder(), request.getFileName(), destinationFolder, null, true);
+            }
+        };
+    }
+
+    private String getDestinationFolder(AssetCopyRequest request) {
+        return request.getDestinationFolder() == null
+                ? mContext.getFilesDir().getAbsolutePath() : request.getDestinationFolder();
+    }
+
+    private static String getCopyKey(String destinationFolder, String fileName) {
+        return new File(destinationFolder, fileName).getAbsolutePath();
+    }
+
+    private CopyFileToStorageResult createFailedResult(AssetCopyRequest request, Throwable error) {
+        return new CopyFileToStorageResult(getCopyKey(getDestinationFolder(request), request.getFileName()), toRuntimeException(error));
+    }
+
+    private void onBatchCompleted(final Map<AssetCopyRequest, CopyFileToStorageResult> results,
+                                  final IAssetHelperBatchListener listener) {
+        getCallbackExecutor().execute(new Runnable() {
+            @Override
+            public void run() {
+                listener.onLoadedToStorage(results);
+            }
+        });
+    }
+
+    private synchronized Executor getCallbackExecutor() {
+        if (mCallbackExecutor == null) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            mCallbackExecutor = new Executor() {
+                @Override
+                public void execute(Runnable command) {
+                    mainHandler.post(command);
+                }
+            };
+        }
+        return mCallbackExecutor;
+    }
+
+    private synchronized Executor getCopyExecutor() {
+        if (mCopyExecutor == null) {
+            int threads = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+            mCopyExecutor = Executors.newFixedThreadPool(threads, new NamedThreadFactory("AssetHelper"));
+        }
+        return mCopyExecutor;
+    }
+
+    private static RuntimeException toRuntimeException(Throwable throwable) {
+        return throwable instanceof RuntimeException ? (RuntimeException) throwable : new RuntimeException(throwable);
+    }
 }
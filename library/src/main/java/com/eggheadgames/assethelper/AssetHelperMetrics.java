@@ -0,0 +1,97 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Metrics collected since they were enabled or reset, see {@link AssetHelper#getMetrics()}
+ */
+public class AssetHelperMetrics {
+
+    private final long[] statusCounts;
+    private final long[] phaseCounts;
+    private final long[] phaseTotalNanos;
+    private final long[] phaseMaxNanos;
+    private final long bytesCopied;
+    private final long catalogHits;
+    private final long catalogMisses;
+    private final long fastPathHits;
+    private final long fastPathMisses;
+
+    AssetHelperMetrics(long[] statusCounts, long[] phaseCounts, long[] phaseTotalNanos, long[] phaseMaxNanos, long bytesCopied,
+                       long catalogHits, long catalogMisses, long fastPathHits, long fastPathMisses) {
+        this.statusCounts = statusCounts;
+        this.phaseCounts = phaseCounts;
+        this.phaseTotalNanos = phaseTotalNanos;
+        this.phaseMaxNanos = phaseMaxNanos;
+        this.bytesCopied = bytesCopied;
+        this.catalogHits = catalogHits;
+        this.catalogMisses = catalogMisses;
+        this.fastPathHits = fastPathHits;
+        this.fastPathMisses = fastPathMisses;
+    }
+
+    /**
+     * @return number of files processed with the status
+     */
+    public long getCount(AssetHelperStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    public long getPhaseCount(AssetPhase phase) {
+        return phaseCounts[phase.ordinal()];
+    }
+
+    public long getPhaseTotalNanos(AssetPhase phase) {
+        return phaseTotalNanos[phase.ordinal()];
+    }
+
+    public long getPhaseMaxNanos(AssetPhase phase) {
+        return phaseMaxNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return average time of the phase or 0 if it never ran
+     */
+    public long getPhaseAverageNanos(AssetPhase phase) {
+        long count = getPhaseCount(phase);
+        return count == 0 ? 0 : getPhaseTotalNanos(phase) / count;
+    }
+
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /**
+     * @return bytes copied per second of {@link AssetPhase#COPY} or 0 if nothing was copied
+     */
+    public long getCopyThroughput() {
+        long nanos = getPhaseTotalNanos(AssetPhase.COPY);
+        return nanos == 0 ? 0 : (long) (bytesCopied * 1e9 / nanos);
+    }
+
+    /**
+     * @return number of asset lookups answered from an existing folder listing
+     */
+    public long getCatalogHits() {
+        return catalogHits;
+    }
+
+    /**
+     * @return number of asset folder listings
+     */
+    public long getCatalogMisses() {
+        return catalogMisses;
+    }
+
+    /**
+     * @see AssetHelper#getFastPathHits()
+     */
+    public long getFastPathHits() {
+        return fastPathHits;
+    }
+
+    /**
+     * @see AssetHelper#getFastPathMisses()
+     */
+    public long getFastPathMisses() {
+        return fastPathMisses;
+    }
+}
@@ -3,5 +3,23 @@ package com.eggheadgames.assethelper;
 public enum AssetHelperStatus {
     INSTALLED,
     UPDATED,
-    IGNORED
+    IGNORED,
+    /**
+     * The copy didn't match the checksum shipped with the asset. The previous copy, if any, is kept
+     */
+    CORRUPTED,
+    /**
+     * The copy was cancelled with {@link AssetCopyTask#cancel()}. The previous copy, if any, is kept
+     */
+    CANCELLED,
+    /**
+     * The destination volume doesn't have the room for the file and the free space headroom,
+     * see {@link AssetHelper#setFreeSpaceHeadroom(long)}. Nothing was written, the previous copy, if any, is kept
+     */
+    NOT_ENOUGH_SPACE,
+    /**
+     * The file couldn't be loaded, e.g. its asset doesn't exist. Batches and folder syncs give the reason
+     * in {@link CopyFileToStorageResult#getError()}. The previous copy, if any, is kept
+     */
+    FAILED
 }
@@ -0,0 +1,206 @@
+package com.eggheadgames.assethelper;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Index of an asset folder listing, built in a single pass.
+ * Every asset name is parsed once into a base name, an optional version and an optional extension,
+ * so looking up a file is a map read instead of matching a regex against every listed file.
+ * <p>
+ * expected asset name <fileName>_xx.yyy, <fileName>_xx, <fileName>.yyy or <fileName>.
+ * If several versions of the same file are listed the highest one is used.
+ * <p>
+ * A name with a second extension, e.g. catalog_12.sqlite.gz, is also indexed as a version of catalog
+ * with the extension sqlite.gz, so compressed variants of a file can be looked up, see {@link AssetDecoder}.
+ * <p>
+ * A file split into parts, e.g. bigdb_20.sqlite.part01 to bigdb_20.sqlite.part12, is indexed once as bigdb_20.sqlite
+ * with the names of its parts in order. The parts are numbered from 1 without gaps, otherwise the file is not indexed.
+ */
+class AssetIndex {
+
+    private static final char VERSION_SEPARATOR = '_';
+    private static final char EXTENSION_SEPARATOR = '.';
+    private static final char KEY_SEPARATOR = '/';
+    private static final String PART_EXTENSION_PREFIX = "part";
+
+    private final Map<String, Entry> entries;
+
+    private AssetIndex(Map<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    static AssetIndex build(String[] list) {
+        Map<String, Entry> entries = new HashMap<>();
+        Map<String, TreeMap<Integer, String>> partGroups = new HashMap<>();
+        if (list != null) {
+            for (String assetName : list) {
+                int partNumber = parsePartNumber(assetName);
+                if (partNumber > 0) {
+                    String fileName = assetName.substring(0, assetName.lastIndexOf(EXTENSION_SEPARATOR));
+                    TreeMap<Integer, String> parts = partGroups.get(fileName);
+                    if (parts == null) {
+                        parts = new TreeMap<>();
+                        partGroups.put(fileName, parts);
+                    }
+                    parts.put(partNumber, assetName);
+                    continue;
+                }
+                put(entries, parse(assetName));
+                put(entries, parseWithOuterExtension(assetName));
+            }
+        }
+        for (Map.Entry<String, TreeMap<Integer, String>> group : partGroups.entrySet()) {
+            TreeMap<Integer, String> parts = group.getValue();
+            if (parts.lastKey() != parts.size()) {
+                // a part is missing, the file can't be put together
+                continue;
+            }
+            String[] partNames = parts.values().toArray(new String[parts.size()]);
+            put(entries, withParts(parse(group.getKey()), partNames));
+            put(entries, withParts(parseWithOuterExtension(group.getKey()), partNames));
+        }
+        return new AssetIndex(entries);
+    }
+
+    /**
+     * @return number of the part, e.g. 1 for bigdb_20.sqlite.part01, or 0 if the name is not a part
+     */
+    static int parsePartNumber(String assetName) {
+        int indexOfDot = assetName == null ? -1 : assetName.lastIndexOf(EXTENSION_SEPARATOR);
+        if (indexOfDot <= 0 || !assetName.startsWith(PART_EXTENSION_PREFIX, indexOfDot + 1)) {
+            return 0;
+        }
+        int indexOfNumber = indexOfDot + 1 + PART_EXTENSION_PREFIX.length();
+        if (indexOfNumber == assetName.length() || !isDigits(assetName, indexOfNumber)) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(assetName.substring(indexOfNumber));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static Entry withParts(Entry entry, String[] parts) {
+        return entry == null ? null : new Entry(entry.assetName, entry.baseName, entry.extension, entry.version, parts);
+    }
+
+    private static void put(Map<String, Entry> entries, Entry entry) {
+        if (entry != null) {
+            String key = key(entry.baseName, entry.extension);
+            Entry existing = entries.get(key);
+            if (existing == null || existing.version < entry.version) {
+                entries.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * @param fileName  file name without version and extension
+     * @param extension file extension or null if file has no extension
+     * @return the matching asset or null if there is no one
+     */
+    Entry find(String fileName, String extension) {
+        return entries.get(key(fileName, extension));
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the highest version of every indexed name, a compressed file is listed both ways
+     */
+    Collection<Entry> entries() {
+        return entries.values();
+    }
+
+    /**
+     * @return parsed asset name or null if the name is empty
+     */
+    static Entry parse(String assetName) {
+        if (assetName == null || assetName.isEmpty()) {
+            return null;
+        }
+
+        String stem = assetName;
+        String extension = null;
+        int indexOfDot = assetName.lastIndexOf(EXTENSION_SEPARATOR);
+        if (indexOfDot != -1) {
+            stem = assetName.substring(0, indexOfDot);
+            extension = assetName.substring(indexOfDot + 1);
+        }
+
+        int version = 0;
+        String baseName = stem;
+        int indexOfVersion = stem.lastIndexOf(VERSION_SEPARATOR);
+        if (indexOfVersion > 0 && indexOfVersion < stem.length() - 1 && isDigits(stem, indexOfVersion + 1)) {
+            try {
+                version = Integer.parseInt(stem.substring(indexOfVersion + 1));
+                baseName = stem.substring(0, indexOfVersion);
+            } catch (NumberFormatException e) {
+                // too long to be a version, it's a part of the name
+            }
+        }
+        return new Entry(assetName, baseName, extension, version);
+    }
+
+    /**
+     * Parses the name without its last extension and adds the extension back,
+     * e.g. catalog_12.sqlite.gz is version 12 of catalog with the extension sqlite.gz
+     *
+     * @return parsed asset name or null if the name doesn't have two extensions
+     */
+    static Entry parseWithOuterExtension(String assetName) {
+        int indexOfDot = assetName == null ? -1 : assetName.lastIndexOf(EXTENSION_SEPARATOR);
+        if (indexOfDot <= 0) {
+            return null;
+        }
+        Entry inner = parse(assetName.substring(0, indexOfDot));
+        if (inner == null || inner.extension == null) {
+            return null;
+        }
+        return new Entry(assetName, inner.baseName, inner.extension + assetName.substring(indexOfDot), inner.version);
+    }
+
+    private static boolean isDigits(String string, int from) {
+        for (int i = from; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String key(String baseName, String extension) {
+        // asset names can't contain a slash, so it can't clash with the name itself
+        return extension == null ? baseName : baseName + KEY_SEPARATOR + extension;
+    }
+
+    static class Entry {
+        final String assetName;
+        final String baseName;
+        final String extension;
+        final int version;
+        /**
+         * names of the parts in order, or null if the asset is a single file
+         */
+        final String[] parts;
+
+        Entry(String assetName, String baseName, String extension, int version) {
+            this(assetName, baseName, extension, version, null);
+        }
+
+        Entry(String assetName, String baseName, String extension, int version, String[] parts) {
+            this.assetName = assetName;
+            this.baseName = baseName;
+            this.extension = extension;
+            this.version = version;
+            this.parts = parts;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Thrown by {@link OsUtil#loadFileToLocalStorage} when a copied file doesn't match the checksum shipped with the asset.
+ * AssetHelper reports it as {@link AssetHelperStatus#CORRUPTED}.
+ */
+public class AssetIntegrityException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    AssetIntegrityException(String message) {
+        super(message);
+    }
+}
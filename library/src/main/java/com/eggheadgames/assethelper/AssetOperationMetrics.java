@@ -0,0 +1,47 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Timings and outcome of processing one file, see {@link IAssetHelperMetricsListener}
+ */
+public class AssetOperationMetrics {
+
+    private final String filePath;
+    private final AssetHelperStatus status;
+    private final long totalNanos;
+    private final long[] phaseNanos;
+    private final long bytesCopied;
+
+    AssetOperationMetrics(String filePath, AssetHelperStatus status, long totalNanos, long[] phaseNanos, long bytesCopied) {
+        this.filePath = filePath;
+        this.status = status;
+        this.totalNanos = totalNanos;
+        this.phaseNanos = phaseNanos;
+        this.bytesCopied = bytesCopied;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public AssetHelperStatus getStatus() {
+        return status;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    /**
+     * @return time spent in the phase or 0 if the phase was skipped
+     */
+    public long getPhaseNanos(AssetPhase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return size of the copied file or 0 if the file was not copied
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+}
@@ -0,0 +1,191 @@
+package com.eggheadgames.assethelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Binary patch which turns one version of a file into the next one by rewriting only the changed blocks.
+ * Ship it as an asset named after both versions, e.g. testdatabase_15-16.patch updates testdatabase_15.sqlite
+ * to testdatabase_16.sqlite. When the installed copy is version 15 the patch is applied to a copy of it,
+ * which then replaces the installed file, otherwise the whole file is copied from the assets as usual.
+ * <p>
+ * Format: magic, format version, base length, base CRC32, target length, target CRC32,
+ * then records of (offset, length, bytes) terminated by offset -1.
+ */
+public final class AssetPatch {
+
+    static final String EXTENSION = "patch";
+    static final int DEFAULT_BLOCK_SIZE = 4096;
+
+    private static final int MAGIC = 0x41485054;
+    private static final int FORMAT_VERSION = 1;
+    private static final long END_OF_RECORDS = -1;
+
+    private AssetPatch() {
+    }
+
+    /**
+     * Creates a patch, e.g. from a build script. Blocks of the default size, 4 KB, match SQLite pages.
+     *
+     * @param base   previous version of the file
+     * @param target new version of the file
+     * @param patch  file to write the patch to
+     */
+    public static void create(File base, File target, File patch) throws IOException {
+        create(base, target, patch, DEFAULT_BLOCK_SIZE);
+    }
+
+    public static void create(File base, File target, File patch, int blockSize) throws IOException {
+        byte[] buffer = new byte[blockSize];
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(patch)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(base.length());
+            out.writeLong(crc32(base, buffer));
+            out.writeLong(target.length());
+            out.writeLong(crc32(target, buffer));
+
+            InputStream baseIn = new BufferedInputStream(new FileInputStream(base));
+            InputStream targetIn = new BufferedInputStream(new FileInputStream(target));
+            try {
+                byte[] baseBlock = new byte[blockSize];
+                byte[] targetBlock = new byte[blockSize];
+                long offset = 0;
+                int length;
+                while ((length = readBlock(targetIn, targetBlock)) > 0) {
+                    int baseLength = readBlock(baseIn, baseBlock);
+                    if (baseLength != length || !Arrays.equals(baseBlock, targetBlock)) {
+                        out.writeLong(offset);
+                        out.writeInt(length);
+                        out.write(targetBlock, 0, length);
+                    }
+                    offset += length;
+                }
+            } finally {
+                baseIn.close();
+                targetIn.close();
+            }
+            out.writeLong(END_OF_RECORDS);
+        } finally {
+            out.close();
+        }
+    }
+
+    static Header readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown patch format");
+        }
+        return new Header(in.readLong(), in.readLong(), in.readLong(), in.readLong());
+    }
+
+    /**
+     * Copies the base to the target, writes the changed blocks to their positions in the target
+     * and truncates it to the target length. The base itself is never changed.
+     * The header should be read from the stream already.
+     *
+     * @throws IOException if the patch is malformed or the result doesn't match the target checksum
+     */
+    static void apply(DataInputStream in, Header header, File base, File target, byte[] buffer) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(target, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            channel.truncate(0);
+            copy(base, channel);
+            long offset;
+            while ((offset = in.readLong()) != END_OF_RECORDS) {
+                int remaining = in.readInt();
+                if (offset < 0 || remaining < 0 || offset + remaining > header.targetLength) {
+                    throw new IOException("Malformed patch record at " + offset);
+                }
+                while (remaining > 0) {
+                    int length = Math.min(remaining, buffer.length);
+                    in.readFully(buffer, 0, length);
+                    ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+                    while (byteBuffer.hasRemaining()) {
+                        channel.write(byteBuffer, offset + byteBuffer.position());
+                    }
+                    offset += length;
+                    remaining -= length;
+                }
+            }
+            randomAccessFile.setLength(header.targetLength);
+            randomAccessFile.getFD().sync();
+        } finally {
+            randomAccessFile.close();
+        }
+        if (crc32(target, buffer) != header.targetCrc32) {
+            throw new IOException("Patched file doesn't match the target checksum");
+        }
+    }
+
+    private static void copy(File base, FileChannel target) throws IOException {
+        FileInputStream in = new FileInputStream(base);
+        try {
+            FileChannel source = in.getChannel();
+            long size = source.size();
+            long position = 0;
+            while (position < size) {
+                long written = source.transferTo(position, size - position, target);
+                if (written <= 0) {
+                    throw new IOException("Can not copy " + base);
+                }
+                position += written;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static long crc32(File file, byte[] buffer) throws IOException {
+        CRC32 crc32 = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                crc32.update(buffer, 0, length);
+            }
+        } finally {
+            in.close();
+        }
+        return crc32.getValue();
+    }
+
+    private static int readBlock(InputStream in, byte[] block) throws IOException {
+        int offset = 0;
+        int length;
+        while (offset < block.length && (length = in.read(block, offset, block.length - offset)) >= 0) {
+            offset += length;
+        }
+        if (offset < block.length) {
+            Arrays.fill(block, offset, block.length, (byte) 0);
+        }
+        return offset;
+    }
+
+    static class Header {
+        final long baseLength;
+        final long baseCrc32;
+        final long targetLength;
+        final long targetCrc32;
+
+        Header(long baseLength, long baseCrc32, long targetLength, long targetCrc32) {
+            this.baseLength = baseLength;
+            this.baseCrc32 = baseCrc32;
+            this.targetLength = targetLength;
+            this.targetCrc32 = targetCrc32;
+        }
+    }
+}
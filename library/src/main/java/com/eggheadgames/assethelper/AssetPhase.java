@@ -0,0 +1,32 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Steps of an asset operation measured by the metrics, see {@link AssetHelper#setMetricsEnabled(boolean)}
+ */
+public enum AssetPhase {
+    /**
+     * Listing of an asset folder. A folder is listed once and shared by all lookups,
+     * so it's reported in {@link AssetHelperMetrics} only, as a part of {@link #FIND_ASSET}
+     */
+    LIST_ASSETS,
+    /**
+     * Looking up the asset of the requested file
+     */
+    FIND_ASSET,
+    /**
+     * Waiting for a copy of the same file in this or another process
+     */
+    LOCK_WAIT,
+    /**
+     * Reading the versions of the copy and of the asset
+     */
+    READ_VERSION,
+    /**
+     * Updating the copy with a patch
+     */
+    PATCH,
+    /**
+     * Copying the asset
+     */
+    COPY
+}
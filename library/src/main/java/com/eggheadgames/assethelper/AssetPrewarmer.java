@@ -0,0 +1,160 @@
+package com.eggheadgames.assethelper;
+
+import android.os.Process;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Installs registered assets one by one on a single low priority thread, the highest priority first.
+ * A caller which needs an asset right away takes over its queued copy or waits for the running one,
+ * so the same file is never copied twice.
+ */
+class AssetPrewarmer {
+
+    private final PriorityBlockingQueue<Entry> queue = new PriorityBlockingQueue<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadFactory threadFactory;
+    private Thread worker;
+
+    AssetPrewarmer(ThreadFactory threadFactory) {
+        this.threadFactory = threadFactory;
+    }
+
+    /**
+     * Queues the copy unless the same file is queued or running already.
+     * A queued copy moves up if it is registered again with a higher priority
+     */
+    void submit(String key, int priority, Callable<CopyFileToStorageResult> task) {
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(key, priority, sequence.getAndIncrement(), task);
+                entries.put(key, entry);
+                queue.add(entry);
+            } else if (priority > entry.priority && queue.remove(entry)) {
+                // the queue is ordered on insertion, so the entry is put back with its new priority
+                entry.priority = priority;
+                queue.add(entry);
+            }
+            startWorker();
+        }
+    }
+
+    /**
+     * Runs the queued copy of the file on the calling thread, or waits till the running one is done
+     *
+     * @return result of the copy, or null if the file is not queued or running
+     * @throws RuntimeException if the copy failed
+     */
+    CopyFileToStorageResult claim(String key) throws RuntimeException {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            queue.remove(entry);
+            entry.claimed = true;
+        }
+        // does nothing if the worker started the copy first
+        entry.run();
+        try {
+            return entry.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Drops the copies which are not started yet, a running copy is finished
+     */
+    void cancelQueued() {
+        synchronized (entries) {
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                entry.cancel(false);
+            }
+        }
+    }
+
+    private void startWorker() {
+        if (worker != null) {
+            return;
+        }
+        worker = threadFactory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                // prewarming must not slow down the work the user waits for
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                while (true) {
+                    try {
+                        queue.take().run();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        worker.start();
+    }
+
+    private class Entry extends FutureTask<CopyFileToStorageResult> implements Comparable<Entry> {
+
+        private final String key;
+        private final long sequence;
+        private int priority;
+        /**
+         * True once a caller waits for the result, which then gets the failure of the copy
+         */
+        private volatile boolean claimed;
+
+        Entry(String key, int priority, long sequence, Callable<CopyFileToStorageResult> task) {
+            super(task);
+            this.key = key;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        protected void done() {
+            synchronized (entries) {
+                if (entries.get(key) == this) {
+                    entries.remove(key);
+                }
+            }
+            if (!claimed && !isCancelled()) {
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    // nobody waits for the copy, so its failure would be lost otherwise
+                    e.getCause().printStackTrace();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+}
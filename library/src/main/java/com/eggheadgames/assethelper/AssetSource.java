@@ -0,0 +1,53 @@
+package com.eggheadgames.assethelper;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read access to the assets of the APK, see {@link OsUtil#getAssetSource}.
+ * AssetManager is final, so this is the part of the asset access tests replace.
+ */
+interface AssetSource {
+
+    /**
+     * @return names of the assets in the folder, empty for a file or a missing folder
+     */
+    String[] list(String path) throws IOException;
+
+    InputStream open(String path) throws IOException;
+
+    /**
+     * @throws java.io.FileNotFoundException if the asset doesn't exist or is compressed in the APK
+     */
+    AssetFileDescriptor openFd(String path) throws IOException;
+
+    /**
+     * The assets of the installed APK
+     */
+    class Apk implements AssetSource {
+
+        private final AssetManager assets;
+
+        Apk(AssetManager assets) {
+            this.assets = assets;
+        }
+
+        @Override
+        public String[] list(String path) throws IOException {
+            return assets.list(path);
+        }
+
+        @Override
+        public InputStream open(String path) throws IOException {
+            return assets.open(path);
+        }
+
+        @Override
+        public AssetFileDescriptor openFd(String path) throws IOException {
+            return assets.openFd(path);
+        }
+    }
+}
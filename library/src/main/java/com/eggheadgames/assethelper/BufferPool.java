@@ -0,0 +1,45 @@
+package com.eggheadgames.assethelper;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Keeps a handful of copy buffers around so that consecutive copies do not allocate
+ * a new large array every time.
+ */
+class BufferPool {
+
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private final ConcurrentLinkedQueue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+    private volatile int bufferSize;
+
+    BufferPool(int bufferSize) {
+        setBufferSize(bufferSize);
+    }
+
+    void setBufferSize(int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size should be positive: " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        buffers.clear();
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        if (buffer == null || buffer.length != bufferSize) {
+            buffer = new byte[bufferSize];
+        }
+        return buffer;
+    }
+
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize && buffers.size() < MAX_POOLED_BUFFERS) {
+            buffers.offer(buffer);
+        }
+    }
+}
@@ -2,4 +2,7 @@ package com.eggheadgames.assethelper;
 
 interface Constants {
     String PREFERENCES_FILE_VERSION = "asset_helper_file_version_";
+    String TEMP_FILE_SUFFIX = ".assethelper.tmp";
+    String LOCK_FILE_SUFFIX = ".assethelper.lock";
+    String SHA256_SIDECAR_EXTENSION = "sha256";
 }
@@ -0,0 +1,14 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Thrown by {@link OsUtil#loadFileToLocalStorage} when a copy was cancelled with {@link AssetCopyTask#cancel()}
+ * or by its {@link CopyProgress}. AssetHelper reports it as {@link AssetHelperStatus#CANCELLED}.
+ */
+public class CopyCancelledException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    CopyCancelledException(String message) {
+        super(message);
+    }
+}
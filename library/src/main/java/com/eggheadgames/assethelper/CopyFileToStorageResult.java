@@ -7,8 +7,15 @@ public class CopyFileToStorageResult {
         this.status = status;
     }
 
+    CopyFileToStorageResult(String pathToFile, RuntimeException error) {
+        this.pathToFile = pathToFile;
+        this.status = AssetHelperStatus.FAILED;
+        this.error = error;
+    }
+
     private String pathToFile;
     private AssetHelperStatus status;
+    private RuntimeException error;
 
 
     public AssetHelperStatus getStatus() {
@@ -18,4 +25,11 @@ public class CopyFileToStorageResult {
     public String getPathToFile() {
         return pathToFile;
     }
+
+    /**
+     * @return reason of a {@link AssetHelperStatus#FAILED} result, null for the other ones
+     */
+    public RuntimeException getError() {
+        return error;
+    }
 }
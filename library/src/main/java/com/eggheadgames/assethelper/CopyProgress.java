@@ -0,0 +1,16 @@
+package com.eggheadgames.assethelper;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Receives the progress of a running copy and can stop it
+ */
+interface CopyProgress {
+
+    /**
+     * @param bytesCopied bytes copied so far
+     * @param totalBytes  size of the asset or -1 if it's unknown
+     * @throws InterruptedIOException if the copy should be cancelled
+     */
+    void onProgress(long bytesCopied, long totalBytes) throws InterruptedIOException;
+}
@@ -0,0 +1,135 @@
+package com.eggheadgames.assethelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copy engine used to move asset bytes to the file system.
+ * Uncompressed assets are copied with {@link FileChannel#transferTo} so the kernel can move
+ * the data without bringing it to the Java heap. Compressed assets can only be read as a stream,
+ * they are copied with a large pooled buffer.
+ */
+class FileCopier {
+
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final long MAX_TRANSFER_CHUNK = 8 * 1024 * 1024;
+    private static final long PROGRESS_TRANSFER_CHUNK = 1024 * 1024;
+
+    private static final FileCopier sharedInstance = new FileCopier(DEFAULT_BUFFER_SIZE);
+
+    private final BufferPool bufferPool;
+
+    FileCopier(int bufferSize) {
+        bufferPool = new BufferPool(bufferSize);
+    }
+
+    static FileCopier shared() {
+        return sharedInstance;
+    }
+
+    void setBufferSize(int bufferSize) {
+        bufferPool.setBufferSize(bufferSize);
+    }
+
+    BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Copies {@code count} bytes starting at {@code position} of the source channel
+     * to the current position of the target channel, reporting the progress after every chunk.
+     *
+     * @param progress progress to update or null
+     * @return number of copied bytes
+     * @throws IOException if the source ends before {@code count} bytes were copied
+     */
+    long transfer(FileChannel source, long position, long count, FileChannel target, CopyProgress progress) throws IOException {
+        // smaller chunks let the progress be reported and the copy be cancelled in time
+        long maxChunk = progress == null ? MAX_TRANSFER_CHUNK : PROGRESS_TRANSFER_CHUNK;
+        long transferred = 0;
+        while (transferred < count) {
+            long chunk = Math.min(maxChunk, count - transferred);
+            long written = source.transferTo(position + transferred, chunk, target);
+            if (written <= 0) {
+                throw new IOException("Unexpected end of file. Copied " + transferred + " of " + count + " bytes");
+            }
+            transferred += written;
+            if (progress != null) {
+                progress.onProgress(transferred, count);
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * Copies {@code count} bytes from the current position of the source channel to {@code targetPosition}
+     * of the target channel. The position of the target is not changed, so several ranges of the same
+     * target can be written at once.
+     *
+     * @param progress progress to update or null
+     * @return number of copied bytes
+     * @throws IOException if the source ends before {@code count} bytes were copied
+     */
+    long transferAt(FileChannel source, long count, FileChannel target, long targetPosition, CopyProgress progress) throws IOException {
+        long maxChunk = progress == null ? MAX_TRANSFER_CHUNK : PROGRESS_TRANSFER_CHUNK;
+        long transferred = 0;
+        while (transferred < count) {
+            long chunk = Math.min(maxChunk, count - transferred);
+            long written = target.transferFrom(source, targetPosition + transferred, chunk);
+            if (written <= 0) {
+                throw new IOException("Unexpected end of file. Copied " + transferred + " of " + count + " bytes");
+            }
+            transferred += written;
+            if (progress != null) {
+                progress.onProgress(transferred, count);
+            }
+        }
+        return transferred;
+    }
+
+    /**
+     * Copies the stream till its end updating the digest with every copied byte. Streams are not closed.
+     *
+     * @param digest     digest to update or null
+     * @param progress   progress to update or null
+     * @param totalBytes expected size of the stream or -1 if it's unknown, used only to report the progress
+     * @return number of copied bytes
+     */
+    long copy(InputStream in, OutputStream out, StreamDigest digest, CopyProgress progress, long totalBytes) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            long copied = 0;
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, length);
+                if (digest != null) {
+                    digest.update(buffer, 0, length);
+                }
+                copied += length;
+                if (progress != null) {
+                    progress.onProgress(copied, totalBytes);
+                }
+            }
+            return copied;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads the stream till its end updating the digest. The stream is not closed.
+     */
+    void digest(InputStream in, StreamDigest digest) throws IOException {
+        byte[] buffer = bufferPool.acquire();
+        try {
+            int length;
+            while ((length = in.read(buffer)) >= 0) {
+                digest.update(buffer, 0, length);
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Mirrors an asset folder with all its subfolders, see {@link AssetHelper#syncFolder}.
+ * Every folder is listed and every file is copied as a separate task, so the tree is walked
+ * and copied in parallel. Copies go through {@link AssetHelper#copyIfNew}, which compares
+ * the asset with the stored version and skips files which are up to date.
+ */
+class FolderSync {
+
+    private final AssetHelper assetHelper;
+    private final OsUtil osUtil;
+    private final Context context;
+    private final Executor executor;
+    private final PathLocks pathLocks;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    private final Set<String> assetPaths = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicLongArray statusCounts = new AtomicLongArray(AssetHelperStatus.values().length);
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final List<CopyFileToStorageResult> failures = Collections.synchronizedList(new ArrayList<CopyFileToStorageResult>());
+
+    FolderSync(AssetHelper assetHelper, OsUtil osUtil, Context context, Executor executor, PathLocks pathLocks) {
+        this.assetHelper = assetHelper;
+        this.osUtil = osUtil;
+        this.context = context;
+        this.executor = executor;
+        this.pathLocks = pathLocks;
+    }
+
+    /**
+     * Blocks till the whole tree is processed. A file which can't be copied, e.g. an empty asset folder
+     * taken for a file, is reported in {@link FolderSyncResult#getFailures()} and keeps its previous copy
+     *
+     * @throws RuntimeException if a folder can't be listed, after the rest of the tree is processed.
+     *                          Nothing is deleted then
+     */
+    FolderSyncResult run(String assetFolder, String destinationFolder, boolean deleteStale) throws RuntimeException {
+        int deletedCount;
+        try {
+            walk(assetFolder, destinationFolder);
+            awaitTasks();
+
+            RuntimeException exception = failure.get();
+            if (exception != null) {
+                throw exception;
+            }
+            // the walk was complete, so a tracked file which was not found in the assets is stale,
+            // files which failed to copy are still in the assets and are kept
+            deletedCount = deleteStale ? deleteStaleFiles(new File(destinationFolder), assetFolder) : 0;
+        } finally {
+            // the versions of the whole tree are written at once
+            osUtil.flushFileVersions(context);
+        }
+
+        long[] counts = new long[statusCounts.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = statusCounts.get(i);
+        }
+        return new FolderSyncResult(counts, deletedCount, bytesCopied.get(), new ArrayList<>(failures));
+    }
+
+    private void walk(final String assetFolder, final String destinationFolder) {
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                Set<String> fileNames;
+                Set<String> folderNames;
+                try {
+                    fileNames = osUtil.listAssetFiles(context, assetFolder);
+                    folderNames = osUtil.listAssetFolders(context, assetFolder);
+                } catch (IOException e) {
+                    throw new RuntimeException("Can't list the asset folder. Path: " + assetFolder, e);
+                }
+                for (String fileName : fileNames) {
+                    copy(assetFolder, fileName, destinationFolder);
+                }
+                for (String folderName : folderNames) {
+                    walk(assetFolder + File.separator + folderName, destinationFolder + File.separator + folderName);
+                }
+            }
+        });
+    }
+
+    private void copy(final String assetFolder, final String fileName, final String destinationFolder) {
+        assetPaths.add(new File(destinationFolder, fileName).getAbsolutePath());
+        submit(new Runnable() {
+            @Override
+            public void run() {
+                CopyFileToStorageResult result;
+                try {
+                    result = assetHelper.copyIfNew(assetFolder, fileName, destinationFolder, true);
+                } catch (RuntimeException e) {
+                    result = new CopyFileToStorageResult(new File(destinationFolder, fileName).getPath(), e);
+                }
+                AssetHelperStatus status = result.getStatus();
+                statusCounts.incrementAndGet(status.ordinal());
+                if (status == AssetHelperStatus.INSTALLED || status == AssetHelperStatus.UPDATED) {
+                    bytesCopied.addAndGet(new File(result.getPathToFile()).length());
+                } else if (status != AssetHelperStatus.IGNORED) {
+                    failures.add(result);
+                }
+            }
+        });
+    }
+
+    private void submit(final Runnable task) {
+        pending.incrementAndGet();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        synchronized (pending) {
+                            pending.notifyAll();
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void awaitTasks() {
+        synchronized (pending) {
+            while (pending.get() > 0) {
+                try {
+                    pending.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Only files copied from the mirrored asset folder are removed. Files put into the folder by the app itself,
+     * files copied there from other asset folders, temp and lock files are left alone.
+     * A file which is being copied right now is skipped
+     *
+     * @param assetFolder asset folder mirrored by the folder
+     */
+    private int deleteStaleFiles(File folder, String assetFolder) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return 0;
+        }
+        int deletedCount = 0;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                deletedCount += deleteStaleFiles(file, assetFolder + File.separator + file.getName());
+                continue;
+            }
+            String path = file.getPath();
+            if (path.endsWith(Constants.TEMP_FILE_SUFFIX) || path.endsWith(Constants.LOCK_FILE_SUFFIX)
+                    || assetPaths.contains(file.getAbsolutePath())) {
+                continue;
+            }
+            if (assetFolder.equals(osUtil.getFileAssetFolder(context, path)) && deleteUnlessCopying(path)) {
+                deletedCount++;
+            }
+        }
+        return deletedCount;
+    }
+
+    /**
+     * Takes the same locks as a copy, so the file isn't removed while a copy of it is installed
+     */
+    private boolean deleteUnlessCopying(String path) {
+        if (!pathLocks.tryLock(path)) {
+            return false;
+        }
+        try {
+            return osUtil.deleteFileIfUnlocked(context, path);
+        } finally {
+            pathLocks.unlock(path);
+        }
+    }
+}
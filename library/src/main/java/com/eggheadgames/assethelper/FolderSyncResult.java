@@ -0,0 +1,70 @@
+package com.eggheadgames.assethelper;
+
+import java.util.List;
+
+/**
+ * Summary of {@link AssetHelper#syncFolder}
+ */
+public class FolderSyncResult {
+
+    private final long[] statusCounts;
+    private final int deletedCount;
+    private final long bytesCopied;
+    private final List<CopyFileToStorageResult> failures;
+
+    FolderSyncResult(long[] statusCounts, int deletedCount, long bytesCopied, List<CopyFileToStorageResult> failures) {
+        this.statusCounts = statusCounts;
+        this.deletedCount = deletedCount;
+        this.bytesCopied = bytesCopied;
+        this.failures = failures;
+    }
+
+    /**
+     * @return number of files with the status, e.g. {@link AssetHelperStatus#IGNORED} for files which were up to date
+     */
+    public long getCount(AssetHelperStatus status) {
+        return statusCounts[status.ordinal()];
+    }
+
+    /**
+     * @return number of files in the asset tree
+     */
+    public long getFileCount() {
+        long count = 0;
+        for (long statusCount : statusCounts) {
+            count += statusCount;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of copied files removed because their assets don't exist anymore
+     */
+    public int getDeletedCount() {
+        return deletedCount;
+    }
+
+    /**
+     * @return size of the installed and updated files
+     */
+    public long getBytesCopied() {
+        return bytesCopied;
+    }
+
+    /**
+     * @return files which were not copied, e.g. with {@link AssetHelperStatus#CORRUPTED}
+     */
+    public List<CopyFileToStorageResult> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "FolderSyncResult{installed=" + getCount(AssetHelperStatus.INSTALLED)
+                + ", updated=" + getCount(AssetHelperStatus.UPDATED)
+                + ", ignored=" + getCount(AssetHelperStatus.IGNORED)
+                + ", failed=" + failures.size()
+                + ", deleted=" + deletedCount
+                + ", bytesCopied=" + bytesCopied + "}";
+    }
+}
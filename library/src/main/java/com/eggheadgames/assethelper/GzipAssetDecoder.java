@@ -0,0 +1,24 @@
+package com.eggheadgames.assethelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+class GzipAssetDecoder implements AssetDecoder {
+
+    private static final String EXTENSION = "gz";
+    /**
+     * Size of the compressed input read at once, the output goes straight to the pooled copy buffer
+     */
+    private static final int INPUT_BUFFER_SIZE = 16 * 1024;
+
+    @Override
+    public String getExtension() {
+        return EXTENSION;
+    }
+
+    @Override
+    public InputStream decode(InputStream in) throws IOException {
+        return new GZIPInputStream(in, INPUT_BUFFER_SIZE);
+    }
+}
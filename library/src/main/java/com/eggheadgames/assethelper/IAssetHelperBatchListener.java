@@ -0,0 +1,8 @@
+package com.eggheadgames.assethelper;
+
+import java.util.Map;
+
+public interface IAssetHelperBatchListener {
+
+    void onLoadedToStorage(Map<AssetCopyRequest, CopyFileToStorageResult> results);
+}
@@ -0,0 +1,11 @@
+package com.eggheadgames.assethelper;
+
+public interface IAssetHelperMetricsListener {
+
+    /**
+     * Called on the thread which processed the file, right before its result is returned. Keep it fast
+     *
+     * @param operation timings and outcome of one file
+     */
+    void onOperation(AssetOperationMetrics operation);
+}
@@ -0,0 +1,11 @@
+package com.eggheadgames.assethelper;
+
+public interface IAssetHelperProgressListener {
+
+    /**
+     * @param filePath    path of the file being copied
+     * @param bytesCopied bytes copied so far
+     * @param totalBytes  size of the asset or -1 if it's unknown
+     */
+    void onProgress(String filePath, long bytesCopied, long totalBytes);
+}
@@ -0,0 +1,98 @@
+package com.eggheadgames.assethelper;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An asynchronous copy which is not finished yet.
+ * Callers asking for the same destination while the copy is running
+ * are added to it instead of starting another copy.
+ * The copy is cancelled once all its callers cancel their tasks, later callers start a new copy then.
+ */
+class InFlightCopy implements CopyProgress {
+
+    private final String filePath;
+    private final Executor callbackExecutor;
+    private final long progressIntervalNanos;
+    private final List<AssetCopyTask> tasks = new ArrayList<>();
+    private long lastProgressTime;
+
+    InFlightCopy(String filePath, Executor callbackExecutor, long progressIntervalMillis) {
+        this.filePath = filePath;
+        this.callbackExecutor = callbackExecutor;
+        this.progressIntervalNanos = progressIntervalMillis * 1000000L;
+    }
+
+    /**
+     * Checked and added at once, so a copy which saw all its tasks cancelled never gets a task which isn't
+     *
+     * @return the added task or null if the copy is cancelled, a new copy has to be started then
+     */
+    synchronized AssetCopyTask addTaskUnlessCancelled(IAssetHelperStorageListener listener, IAssetHelperProgressListener progressListener) {
+        if (!tasks.isEmpty() && isCancelled()) {
+            return null;
+        }
+        AssetCopyTask task = new AssetCopyTask(listener, progressListener);
+        tasks.add(task);
+        return task;
+    }
+
+    synchronized boolean isCancelled() {
+        for (AssetCopyTask task : tasks) {
+            if (!task.isCancelled()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Progress is reported not more often than the progress interval, except for the last update
+     */
+    @Override
+    public void onProgress(final long bytesCopied, final long totalBytes) throws InterruptedIOException {
+        if (isCancelled()) {
+            throw new InterruptedIOException("The copy was cancelled. Path: " + filePath);
+        }
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (bytesCopied != totalBytes && now - lastProgressTime < progressIntervalNanos) {
+                return;
+            }
+            lastProgressTime = now;
+        }
+        for (AssetCopyTask task : getTasks()) {
+            final IAssetHelperProgressListener progressListener = task.getProgressListener();
+            if (progressListener != null && !task.isCancelled()) {
+                callbackExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        progressListener.onProgress(filePath, bytesCopied, totalBytes);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * Callers which cancelled their tasks get {@link AssetHelperStatus#CANCELLED} whatever the result is
+     */
+    void deliver(final CopyFileToStorageResult result) {
+        for (AssetCopyTask task : getTasks()) {
+            final IAssetHelperStorageListener listener = task.getListener();
+            final AssetHelperStatus status = task.isCancelled() ? AssetHelperStatus.CANCELLED : result.getStatus();
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onLoadedToStorage(result.getPathToFile(), status);
+                }
+            });
+        }
+    }
+
+    private synchronized List<AssetCopyTask> getTasks() {
+        return new ArrayList<>(tasks);
+    }
+}
@@ -0,0 +1,14 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Thrown by {@link OsUtil#loadFileToLocalStorage} when the destination volume doesn't have the room for a copy
+ * and the free space headroom. AssetHelper reports it as {@link AssetHelperStatus#NOT_ENOUGH_SPACE}.
+ */
+public class InsufficientStorageException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    InsufficientStorageException(String message) {
+        super(message);
+    }
+}
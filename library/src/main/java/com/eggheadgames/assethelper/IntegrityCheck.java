@@ -0,0 +1,19 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Checksum computed while a file is copied and stored together with its version
+ */
+public enum IntegrityCheck {
+    /**
+     * No checksum, uncompressed assets are copied by the kernel. This is the default
+     */
+    NONE,
+    /**
+     * Fast checksum which catches truncated and damaged copies
+     */
+    CRC32,
+    /**
+     * Slower but collision resistant checksum. Always used for assets shipped with a .sha256 file
+     */
+    SHA256
+}
@@ -0,0 +1,93 @@
+package com.eggheadgames.assethelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only memory mapping of a copied asset, returned by {@link AssetHelper#map}.
+ * Reads are served from the page cache without copying the data to the Java heap.
+ * <p>
+ * A buffer can't be larger than 2 GB, so larger files are mapped in chunks of {@link #getChunkSize()} bytes.
+ * The mapping is shared, every call of {@link #getChunk(int)} returns a buffer with its own position,
+ * so it can be read from several threads.
+ */
+public class MappedAsset {
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+    private final long chunkSize;
+    private final int version;
+
+    private MappedAsset(MappedByteBuffer[] chunks, long size, long chunkSize, int version) {
+        this.chunks = chunks;
+        this.size = size;
+        this.chunkSize = chunkSize;
+        this.version = version;
+    }
+
+    static MappedAsset map(File file, int version, long chunkSize) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            int count = size == 0 ? 1 : (int) ((size + chunkSize - 1) / chunkSize);
+            MappedByteBuffer[] chunks = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long position = i * chunkSize;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, size - position));
+            }
+            // the mapping stays valid after the channel is closed
+            return new MappedAsset(chunks, size, chunkSize, version);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * @return size of every chunk but the last one
+     */
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return read-only buffer of the chunk starting at {@code index * getChunkSize()}
+     */
+    public ByteBuffer getChunk(int index) {
+        return chunks[index].duplicate();
+    }
+
+    /**
+     * @return read-only buffer of the whole file
+     * @throws IllegalStateException if the file is mapped in several chunks
+     */
+    public ByteBuffer getBuffer() {
+        if (chunks.length != 1) {
+            throw new IllegalStateException("The file is mapped in " + chunks.length + " chunks, use getChunk()");
+        }
+        return getChunk(0);
+    }
+
+    /**
+     * @return byte at the position of the file
+     */
+    public byte get(long position) {
+        return chunks[(int) (position / chunkSize)].get((int) (position % chunkSize));
+    }
+
+    int getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,55 @@
+package com.eggheadgames.assethelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Mappings of copied files shared by the whole process, so a file is mapped once per version.
+ * A mapping is dropped when a new version of its file is installed.
+ */
+class MappedFileCache {
+
+    /**
+     * 1 GB, a multiple of any page size which fits into a ByteBuffer
+     */
+    static final long DEFAULT_CHUNK_SIZE = 1L << 30;
+
+    private static final MappedFileCache sharedInstance = new MappedFileCache(DEFAULT_CHUNK_SIZE);
+
+    private final Map<String, MappedAsset> mappings = new ConcurrentHashMap<>();
+    private final long chunkSize;
+
+    MappedFileCache(long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    static MappedFileCache shared() {
+        return sharedInstance;
+    }
+
+    MappedAsset get(String path, int version) throws IOException {
+        MappedAsset mapping = mappings.get(path);
+        File file = new File(path);
+        if (mapping != null && mapping.getVersion() == version && mapping.getSize() == file.length()) {
+            return mapping;
+        }
+        synchronized (this) {
+            mapping = mappings.get(path);
+            if (mapping == null || mapping.getVersion() != version || mapping.getSize() != file.length()) {
+                mapping = MappedAsset.map(file, version, chunkSize);
+                mappings.put(path, mapping);
+            }
+            return mapping;
+        }
+    }
+
+    boolean contains(String path) {
+        return mappings.containsKey(path);
+    }
+
+    void invalidate(String path) {
+        mappings.remove(path);
+    }
+}
@@ -0,0 +1,111 @@
+package com.eggheadgames.assethelper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Collects the metrics of the whole process. While the metrics are disabled every call returns
+ * after reading a volatile flag, the clock isn't even read.
+ */
+class MetricsRecorder {
+
+    private static final MetricsRecorder sharedInstance = new MetricsRecorder();
+
+    private final AtomicLongArray statusCounts = new AtomicLongArray(AssetHelperStatus.values().length);
+    private final AtomicLongArray phaseCounts = new AtomicLongArray(AssetPhase.values().length);
+    private final AtomicLongArray phaseTotalNanos = new AtomicLongArray(AssetPhase.values().length);
+    private final AtomicLongArray phaseMaxNanos = new AtomicLongArray(AssetPhase.values().length);
+    private final AtomicLong bytesCopied = new AtomicLong();
+    private final AtomicLong catalogHits = new AtomicLong();
+    private final AtomicLong catalogMisses = new AtomicLong();
+    private volatile boolean enabled;
+    private volatile IAssetHelperMetricsListener listener;
+
+    static MetricsRecorder shared() {
+        return sharedInstance;
+    }
+
+    void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    void setListener(IAssetHelperMetricsListener listener) {
+        this.listener = listener;
+    }
+
+    boolean isEnabled() {
+        return enabled || listener != null;
+    }
+
+    /**
+     * @return timer of an operation, which does nothing while the metrics are disabled
+     */
+    OperationTimer startOperation() {
+        return isEnabled() ? new OperationTimer(this) : OperationTimer.DISABLED;
+    }
+
+    /**
+     * @return start time to pass to {@link #addPhase} or 0 if the metrics are disabled
+     */
+    long startPhase() {
+        return isEnabled() ? System.nanoTime() : 0;
+    }
+
+    void addPhase(AssetPhase phase, long startNanos) {
+        if (startNanos != 0) {
+            recordPhase(phase, System.nanoTime() - startNanos);
+        }
+    }
+
+    void addCatalogLookup(boolean hit) {
+        if (isEnabled()) {
+            (hit ? catalogHits : catalogMisses).incrementAndGet();
+        }
+    }
+
+    void recordPhase(AssetPhase phase, long nanos) {
+        int index = phase.ordinal();
+        phaseCounts.incrementAndGet(index);
+        phaseTotalNanos.addAndGet(index, nanos);
+        long max;
+        do {
+            max = phaseMaxNanos.get(index);
+        } while (nanos > max && !phaseMaxNanos.compareAndSet(index, max, nanos));
+    }
+
+    void recordOperation(AssetOperationMetrics operation) {
+        statusCounts.incrementAndGet(operation.getStatus().ordinal());
+        bytesCopied.addAndGet(operation.getBytesCopied());
+        IAssetHelperMetricsListener listener = this.listener;
+        if (listener != null) {
+            listener.onOperation(operation);
+        }
+    }
+
+    AssetHelperMetrics snapshot(long fastPathHits, long fastPathMisses) {
+        return new AssetHelperMetrics(toArray(statusCounts), toArray(phaseCounts), toArray(phaseTotalNanos), toArray(phaseMaxNanos),
+                bytesCopied.get(), catalogHits.get(), catalogMisses.get(), fastPathHits, fastPathMisses);
+    }
+
+    void reset() {
+        for (int i = 0; i < statusCounts.length(); i++) {
+            statusCounts.set(i, 0);
+        }
+        for (int i = 0; i < phaseCounts.length(); i++) {
+            phaseCounts.set(i, 0);
+            phaseTotalNanos.set(i, 0);
+            phaseMaxNanos.set(i, 0);
+        }
+        bytesCopied.set(0);
+        catalogHits.set(0);
+        catalogMisses.set(0);
+    }
+
+    private static long[] toArray(AtomicLongArray array) {
+        long[] result = new long[array.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = array.get(i);
+        }
+        return result;
+    }
+}
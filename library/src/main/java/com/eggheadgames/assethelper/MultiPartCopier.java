@@ -0,0 +1,138 @@
+package com.eggheadgames.assethelper;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Puts a file split into parts together, copying every part into its own range of the target at once.
+ * Each part has its own source, and positional writes don't share the position of the target,
+ * so the parts are read and written by several cores and flash channels instead of a single stream.
+ */
+class MultiPartCopier {
+
+    private static final MultiPartCopier sharedInstance = new MultiPartCopier(
+            Executors.newFixedThreadPool(Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4)),
+                    new NamedThreadFactory("AssetHelper-part")));
+
+    /**
+     * A part of the file, copied to the target at the sum of the lengths of the parts before it
+     */
+    interface Part {
+        long getLength();
+
+        /**
+         * Copies exactly {@link #getLength()} bytes to the position of the target, see {@link FileCopier#transferAt}
+         */
+        void copyTo(FileChannel target, long position, CopyProgress progress) throws IOException;
+    }
+
+    private final ExecutorService executor;
+
+    MultiPartCopier(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    static MultiPartCopier shared() {
+        return sharedInstance;
+    }
+
+    /**
+     * Blocks till all the parts are copied. Once a part fails, the other ones stop at their next chunk.
+     *
+     * @param progress progress of the whole file or null
+     * @return length of the file
+     * @throws IOException            the first failure of a part, the target is incomplete then
+     * @throws InterruptedIOException if the copy was cancelled by the progress
+     */
+    long copy(List<? extends Part> parts, final FileChannel target, final CopyProgress progress) throws IOException {
+        long totalLength = 0;
+        for (Part part : parts) {
+            totalLength += part.getLength();
+        }
+        if (target.size() < totalLength) {
+            // transferFrom writes nothing past the end of the file, so the target gets its full size first
+            target.write(ByteBuffer.allocate(1), totalLength - 1);
+        }
+        final AtomicReference<IOException> failure = new AtomicReference<>();
+        final AtomicLong copied = new AtomicLong();
+        List<FutureTask<Void>> tasks = new ArrayList<>(parts.size());
+        long position = 0;
+        for (final Part part : parts) {
+            final long partPosition = position;
+            final CopyProgress partProgress = new PartProgress(copied, totalLength, failure, progress);
+            FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    try {
+                        part.copyTo(target, partPosition, partProgress);
+                    } catch (IOException e) {
+                        failure.compareAndSet(null, e);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, new IOException(e));
+                    }
+                    return null;
+                }
+            });
+            executor.execute(task);
+            tasks.add(task);
+            position += part.getLength();
+        }
+
+        for (FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, new IOException(e.getCause()));
+            } catch (InterruptedException e) {
+                failure.compareAndSet(null, new InterruptedIOException("Interrupted while copying parts"));
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return totalLength;
+    }
+
+    /**
+     * Adds the progress of a part to the progress of the whole file and stops the part once another one failed
+     */
+    private static class PartProgress implements CopyProgress {
+
+        private final AtomicLong copied;
+        private final long totalLength;
+        private final AtomicReference<IOException> failure;
+        private final CopyProgress progress;
+        private long partCopied;
+
+        PartProgress(AtomicLong copied, long totalLength, AtomicReference<IOException> failure, CopyProgress progress) {
+            this.copied = copied;
+            this.totalLength = totalLength;
+            this.failure = failure;
+            this.progress = progress;
+        }
+
+        @Override
+        public void onProgress(long bytesCopied, long totalBytes) throws InterruptedIOException {
+            if (failure.get() != null) {
+                throw new InterruptedIOException("Another part failed");
+            }
+            long total = copied.addAndGet(bytesCopied - partCopied);
+            partCopied = bytesCopied;
+            if (progress != null) {
+                progress.onProgress(total, totalLength);
+            }
+        }
+    }
+}
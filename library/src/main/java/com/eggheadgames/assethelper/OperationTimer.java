@@ -0,0 +1,50 @@
+package com.eggheadgames.assethelper;
+
+/**
+ * Measures the phases of processing one file, not thread safe
+ */
+class OperationTimer {
+
+    static final OperationTimer DISABLED = new OperationTimer(null);
+
+    private final MetricsRecorder recorder;
+    private final long startNanos;
+    private final long[] phaseNanos;
+    private long bytesCopied;
+
+    OperationTimer(MetricsRecorder recorder) {
+        this.recorder = recorder;
+        this.startNanos = recorder == null ? 0 : System.nanoTime();
+        this.phaseNanos = recorder == null ? null : new long[AssetPhase.values().length];
+    }
+
+    boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * @return start time to pass to {@link #endPhase} or 0 if the metrics are disabled
+     */
+    long startPhase() {
+        return recorder == null ? 0 : System.nanoTime();
+    }
+
+    void endPhase(AssetPhase phase, long phaseStartNanos) {
+        if (recorder != null) {
+            long nanos = System.nanoTime() - phaseStartNanos;
+            phaseNanos[phase.ordinal()] += nanos;
+            recorder.recordPhase(phase, nanos);
+        }
+    }
+
+    void setBytesCopied(long bytesCopied) {
+        this.bytesCopied = bytesCopied;
+    }
+
+    void finish(CopyFileToStorageResult result) {
+        if (recorder != null) {
+            recorder.recordOperation(new AssetOperationMetrics(result.getPathToFile(), result.getStatus(),
+                    System.nanoTime() - startNanos, phaseNanos, bytesCopied));
+        }
+    }
+}
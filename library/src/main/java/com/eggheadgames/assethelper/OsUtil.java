@@ -1,48 +1,586 @@
 package com.eggheadgames.assethelper;
 
+import android.annotation.TargetApi;
 import android.content.Context;
-import android.preference.PreferenceManager;
+import android.content.res.AssetFileDescriptor;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
 import android.text.TextUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class OsUtil {
 
-    private static final String VERSION_PATTERN = "_\\d.+";
-    private String cachedAssetPath;
+    static final long DEFAULT_FREE_SPACE_HEADROOM = 10 * 1024 * 1024;
+
+    private final AssetCatalog assetCatalog = AssetCatalog.shared();
+    private final FileCopier fileCopier = FileCopier.shared();
+    private final MappedFileCache mappedFileCache = MappedFileCache.shared();
+    private final MultiPartCopier multiPartCopier = MultiPartCopier.shared();
+    private final Map<String, String> copiedChecksums = new ConcurrentHashMap<>();
+    private volatile IntegrityCheck integrityCheck = IntegrityCheck.NONE;
+    private volatile long freeSpaceHeadroom = DEFAULT_FREE_SPACE_HEADROOM;
+    private final List<AssetDecoder> decoders = new CopyOnWriteArrayList<AssetDecoder>(
+            Collections.singletonList(new GzipAssetDecoder()));
 
     public String loadFileToLocalStorage(Context context, String assetFolder, String fileName, String extension, String destinationFilePath) {
-        String assetFilePath = findAsset(context, assetFolder, fileName, extension);
+        return loadFileToLocalStorage(context, assetFolder, fileName, extension, destinationFilePath, null);
+    }
+
+    /**
+     * @param progress receives the progress of the copy and can cancel it, may be null
+     * @throws CopyCancelledException       if the copy was cancelled, the partial copy is removed then
+     * @throws InsufficientStorageException if there is no room for the copy, nothing is written then
+     * @throws AssetIntegrityException      if the copy doesn't match the checksum of the asset, the old file is kept then
+     */
+    public String loadFileToLocalStorage(Context context, String assetFolder, String fileName, String extension, String destinationFilePath,
+                                         CopyProgress progress) {
+        AssetIndex.Entry entry = findSourceEntry(context, assetFolder, fileName, extension);
+        if (entry == null) {
+            throw new RuntimeException("An asset for requested file doesn't exist");
+        }
+        AssetDecoder decoder = findDecoder(entry, extension);
+        String assetFilePath = assetFolder + File.separator + entry.assetName;
 
         File file = new File(destinationFilePath);
-        if (file.exists()) {
-            boolean delete = file.delete();
-            if (!delete) {
-                throw new RuntimeException("Can not remove old file");
+        File tempFile = new File(destinationFilePath + Constants.TEMP_FILE_SUFFIX);
+        StreamDigest digest;
+        String expectedChecksum;
+        try {
+            AssetSource assets = getAssetSource(context);
+            expectedChecksum = readExpectedChecksum(context, assetFolder, entry);
+            digest = expectedChecksum != null ? StreamDigest.create(IntegrityCheck.SHA256) : StreamDigest.create(integrityCheck);
+            // the old file stays till the new one is renamed into place, so the copy needs room of its own
+            long length = decoder == null ? getAssetLength(assets, assetFolder, entry) : -1;
+            ensureFreeSpace(file.getAbsoluteFile().getParentFile(), length);
+            FileOutputStream fos = new FileOutputStream(tempFile);
+            try {
+                if (length > 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                    preallocate(fos, length);
+                }
+                if (decoder != null) {
+                    // the decoded size isn't known before the end of the stream,
+                    // and a compressed stream can only be decoded from its start, so parts are decoded in order
+                    InputStream is = decoder.decode(openAsset(assets, assetFolder, entry));
+                    try {
+                        fileCopier.copy(is, fos, digest, progress, -1);
+                    } finally {
+                        is.close();
+                    }
+                } else if (entry.parts != null && digest == null && length >= 0) {
+                    // the parts are written at their positions, which needs the length of each of them
+                    FileChannel channel = fos.getChannel();
+                    long copied = multiPartCopier.copy(getAssetParts(assets, assetFolder, entry), channel, progress);
+                    // parts are written at their positions, the channel position is used to trim the file below
+                    channel.position(copied);
+                } else if (digest != null || entry.parts != null || !copyUncompressedAsset(assets, assetFilePath, fos, progress)) {
+                    // a checksum needs the bytes in the Java heap and in order, so the kernel copy can be used only without it
+                    InputStream is = openAsset(assets, assetFolder, entry);
+                    try {
+                        fileCopier.copy(is, fos, digest, progress, length);
+                    } finally {
+                        is.close();
+                    }
+                }
+                fos.flush();
+                FileChannel channel = fos.getChannel();
+                if (channel.size() > channel.position()) {
+                    // the asset turned out to be shorter than preallocated
+                    channel.truncate(channel.position());
+                }
+                fos.getFD().sync();
+            } finally {
+                fos.close();
             }
+        } catch (InterruptedIOException e) {
+            deleteTempFile(tempFile);
+            throw new CopyCancelledException(e.getMessage());
+        } catch (InsufficientStorageException e) {
+            deleteTempFile(tempFile);
+            throw e;
+        } catch (Exception e) {
+            deleteTempFile(tempFile);
+            throw new RuntimeException(e);
+        }
+
+        String checksum = digest == null ? null : digest.getValue();
+        if (expectedChecksum != null && !expectedChecksum.equals(checksum)) {
+            deleteTempFile(tempFile);
+            throw new AssetIntegrityException("Checksum mismatch. Asset: " + assetFilePath
+                    + ", expected: " + expectedChecksum + ", actual: " + checksum);
+        }
+
+        // rename replaces the old file atomically, so readers see either the old or the new copy
+        if (!tempFile.renameTo(file)) {
+            deleteTempFile(tempFile);
+            throw new RuntimeException("Can not replace old file. Path: " + destinationFilePath);
         }
+
+        if (checksum != null) {
+            copiedChecksums.put(destinationFilePath, checksum);
+        }
+        return destinationFilePath;
+    }
+
+    /**
+     * Updates the copied file with a patch asset, e.g. data_15-16.patch, see {@link AssetPatch}.
+     * The copy is checked against the patch base first. The patch is applied to a temp copy of the file,
+     * which replaces the file like a full copy does, so readers and mappings of the file never see it half-patched.
+     *
+     * @return false if there is no patch or it doesn't fit the copy, the file has to be copied in full then
+     */
+    public boolean applyPatch(Context context, String assetFolder, String fileName, int fromVersion, int toVersion,
+                              String destinationFilePath) {
+        AssetIndex.Entry entry = findAssetEntry(context, assetFolder, fileName + "_" + fromVersion + "-" + toVersion, AssetPatch.EXTENSION);
+        File file = new File(destinationFilePath);
+        if (entry == null || !file.exists()) {
+            return false;
+        }
+        File tempFile = new File(destinationFilePath + Constants.TEMP_FILE_SUFFIX);
+        BufferPool bufferPool = fileCopier.getBufferPool();
+        byte[] buffer = bufferPool.acquire();
         try {
-            InputStream is = context.getAssets().open(assetFilePath);
-            byte[] buffer = new byte[1024];
-            FileOutputStream fos = new FileOutputStream(file);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    getAssetSource(context).open(assetFolder + File.separator + entry.assetName)));
+            try {
+                AssetPatch.Header header = AssetPatch.readHeader(in);
+                String baseChecksum = StreamDigest.CRC32_PREFIX + Long.toHexString(header.baseCrc32);
+                VersionManifest.Record record = VersionManifest.get(context).get(destinationFilePath);
+                if (file.length() != header.baseLength) {
+                    return false;
+                }
+                // a checksum stored by a CRC32 copy is trusted while the file is untouched, otherwise it is computed
+                boolean isBaseKnown = record != null && baseChecksum.equals(record.checksum)
+                        && file.lastModified() == record.lastModified;
+                if (!isBaseKnown && AssetPatch.crc32(file, buffer) != header.baseCrc32) {
+                    return false;
+                }
+                if (!hasFreeSpace(file.getAbsoluteFile().getParentFile(), header.targetLength)) {
+                    // the full copy reports the missing space
+                    return false;
+                }
 
-            int length = 0;
-            while ((length = is.read(buffer)) >= 0) {
-                fos.write(buffer, 0, length);
+                AssetPatch.apply(in, header, file, tempFile, buffer);
+                // the stored checksum is of the configured kind, like the one of a full copy
+                IntegrityCheck check = integrityCheck;
+                String checksum = check == IntegrityCheck.CRC32
+                        ? StreamDigest.CRC32_PREFIX + Long.toHexString(header.targetCrc32) : computeChecksum(tempFile, check);
+                if (!tempFile.renameTo(file)) {
+                    deleteTempFile(tempFile);
+                    return false;
+                }
+                if (checksum != null) {
+                    copiedChecksums.put(destinationFilePath, checksum);
+                }
+                return true;
+            } finally {
+                in.close();
             }
+        } catch (IOException e) {
+            e.printStackTrace();
+            deleteTempFile(tempFile);
+            return false;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
 
+    /**
+     * @return checksum of the configured integrity check or null if it's disabled
+     */
+    private String computeChecksum(File file, IntegrityCheck check) throws IOException {
+        StreamDigest digest = StreamDigest.create(check);
+        if (digest == null) {
+            return null;
+        }
+        InputStream is = new FileInputStream(file);
+        try {
+            fileCopier.digest(is, digest);
+        } finally {
             is.close();
-            fos.close();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
         }
+        return digest.getValue();
+    }
 
-        return destinationFilePath;
+    /**
+     * @param headroom space to leave free on the destination volume after a copy
+     */
+    public void setFreeSpaceHeadroom(long headroom) {
+        this.freeSpaceHeadroom = headroom;
+    }
+
+    /**
+     * @return size of the asset or the sum of its parts, -1 if the size of the asset or a part is unknown
+     */
+    private long getAssetLength(AssetSource assets, String assetFolder, AssetIndex.Entry entry) throws IOException {
+        if (entry.parts == null) {
+            return getAssetLength(assets, assetFolder + File.separator + entry.assetName);
+        }
+        long length = 0;
+        for (String part : entry.parts) {
+            long partLength = getAssetLength(assets, assetFolder + File.separator + part);
+            if (partLength < 0) {
+                return -1;
+            }
+            length += partLength;
+        }
+        return length;
+    }
+
+    /**
+     * The uncompressed size of an asset compressed in the APK isn't known before the end of its stream,
+     * so the free space check and the preallocation are skipped for it
+     *
+     * @return size of the asset stored uncompressed in the APK or -1 if it's unknown
+     */
+    private long getAssetLength(AssetSource assets, String assetFilePath) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(assetFilePath);
+        } catch (FileNotFoundException e) {
+            return -1;
+        }
+        try {
+            return descriptor.getLength();
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * @param length size of the file to copy or -1 if it's unknown, the check is skipped then
+     * @throws InsufficientStorageException if the file and the headroom don't fit on the volume
+     */
+    private void ensureFreeSpace(File folder, long length) {
+        if (!hasFreeSpace(folder, length)) {
+            throw new InsufficientStorageException("Not enough space for " + length + " bytes in " + folder
+                    + ". Usable: " + folder.getUsableSpace() + ", headroom: " + freeSpaceHeadroom);
+        }
+    }
+
+    private boolean hasFreeSpace(File folder, long length) {
+        return length < 0 || folder == null || folder.getUsableSpace() >= length + freeSpaceHeadroom;
+    }
+
+    /**
+     * Reserves the blocks of the whole file at once, which keeps the file contiguous
+     * and fails right away if the space is taken by someone else meanwhile
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void preallocate(FileOutputStream fos, long length) throws IOException {
+        try {
+            Os.posix_fallocate(fos.getFD(), 0, length);
+        } catch (ErrnoException e) {
+            if (e.errno == OsConstants.ENOSPC) {
+                throw new InsufficientStorageException("Not enough space for " + length + " bytes");
+            }
+            // not supported by the file system, the file grows while it's written
+        }
+    }
+
+    /**
+     * An asset can be shipped with a sidecar file containing its SHA-256 in hex, e.g. data_15.db.sha256
+     * in the format of sha256sum output.
+     *
+     * @return expected checksum of the asset or null if there is no sidecar file
+     */
+    private String readExpectedChecksum(Context context, String assetFolder, AssetIndex.Entry entry) throws IOException {
+        AssetIndex.Entry sidecar = findAssetEntry(context, assetFolder, entry.assetName, Constants.SHA256_SIDECAR_EXTENSION);
+        if (sidecar == null) {
+            return null;
+        }
+        InputStream is = getAssetSource(context).open(assetFolder + File.separator + sidecar.assetName);
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(is, "UTF-8"));
+            String line = reader.readLine();
+            if (line == null || line.trim().isEmpty()) {
+                throw new IOException("Empty checksum file: " + sidecar.assetName);
+            }
+            return StreamDigest.SHA256_PREFIX + line.trim().split("\\s+")[0].toLowerCase(Locale.US);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Compares the file with the size and modification time stored when it was copied.
+     *
+     * @param rehash also compare the file content with the stored checksum, reads the whole file
+     * @return false if the file was never copied, or was changed or damaged since then
+     */
+    public boolean isFileIntact(Context context, String fullPathToFile, boolean rehash) {
+        VersionManifest.Record record = VersionManifest.get(context).get(fullPathToFile);
+        File file = new File(fullPathToFile);
+        if (record == null || !file.exists() || file.length() != record.size || file.lastModified() != record.lastModified) {
+            return false;
+        }
+        if (!rehash || record.checksum == null) {
+            return true;
+        }
+        StreamDigest digest = StreamDigest.forValue(record.checksum);
+        if (digest == null) {
+            return true;
+        }
+        try {
+            InputStream is = new FileInputStream(file);
+            try {
+                fileCopier.digest(is, digest);
+            } finally {
+                is.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return record.checksum.equals(digest.getValue());
+    }
+
+    public void setIntegrityCheck(IntegrityCheck integrityCheck) {
+        this.integrityCheck = integrityCheck;
+    }
+
+    /**
+     * Replaces the decoder registered for the same extension
+     */
+    public void registerDecoder(AssetDecoder decoder) {
+        synchronized (decoders) {
+            for (AssetDecoder registered : decoders) {
+                if (registered.getExtension().equals(decoder.getExtension())) {
+                    decoders.remove(registered);
+                }
+            }
+            decoders.add(decoder);
+        }
+    }
+
+    /**
+     * @return true if the asset is stored uncompressed in the APK and can be opened as a file descriptor
+     */
+    public boolean isAssetUncompressed(Context context, String assetFolder, String fileName, String extension) {
+        try {
+            openAssetFd(context, assetFolder, fileName, extension).close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @throws FileNotFoundException if the asset doesn't exist or is compressed
+     */
+    public AssetFileDescriptor openAssetFd(Context context, String assetFolder, String fileName, String extension) throws IOException {
+        AssetIndex.Entry entry = findSourceEntry(context, assetFolder, fileName, extension);
+        if (entry == null || entry.parts != null || findDecoder(entry, extension) != null) {
+            throw new FileNotFoundException("No uncompressed asset for " + fileName + " in " + assetFolder);
+        }
+        return getAssetSource(context).openFd(assetFolder + File.separator + entry.assetName);
+    }
+
+    /**
+     * Opens the asset as a stream of the file content, compressed variants are decoded
+     */
+    public InputStream openAssetStream(Context context, String assetFolder, String fileName, String extension) throws IOException {
+        AssetIndex.Entry entry = findSourceEntry(context, assetFolder, fileName, extension);
+        if (entry == null) {
+            throw new FileNotFoundException("No asset for " + fileName + " in " + assetFolder);
+        }
+        InputStream is = openAsset(getAssetSource(context), assetFolder, entry);
+        AssetDecoder decoder = findDecoder(entry, extension);
+        if (decoder == null) {
+            return is;
+        }
+        try {
+            return decoder.decode(is);
+        } catch (IOException e) {
+            is.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return stream of the asset, the parts of a split asset follow each other
+     */
+    private static InputStream openAsset(AssetSource assets, String assetFolder, AssetIndex.Entry entry) throws IOException {
+        if (entry.parts == null) {
+            return assets.open(assetFolder + File.separator + entry.assetName);
+        }
+        Vector<InputStream> streams = new Vector<>(entry.parts.length);
+        try {
+            for (String part : entry.parts) {
+                streams.add(assets.open(assetFolder + File.separator + part));
+            }
+        } catch (IOException e) {
+            for (InputStream stream : streams) {
+                stream.close();
+            }
+            throw e;
+        }
+        return new SequenceInputStream(streams.elements());
+    }
+
+    private List<AssetPart> getAssetParts(AssetSource assets, String assetFolder, AssetIndex.Entry entry) throws IOException {
+        List<AssetPart> parts = new ArrayList<>(entry.parts.length);
+        for (String part : entry.parts) {
+            String partPath = assetFolder + File.separator + part;
+            parts.add(new AssetPart(assets, partPath, getAssetLength(assets, partPath)));
+        }
+        return parts;
+    }
+
+    /**
+     * A part of a split asset stored uncompressed in the APK, copied by the kernel
+     */
+    private class AssetPart implements MultiPartCopier.Part {
+
+        private final AssetSource assets;
+        private final String assetFilePath;
+        private final long length;
+
+        AssetPart(AssetSource assets, String assetFilePath, long length) {
+            this.assets = assets;
+            this.assetFilePath = assetFilePath;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void copyTo(FileChannel target, long position, CopyProgress progress) throws IOException {
+            AssetFileDescriptor descriptor = assets.openFd(assetFilePath);
+            try {
+                FileInputStream is = descriptor.createInputStream();
+                try {
+                    FileChannel source = is.getChannel();
+                    source.position(descriptor.getStartOffset());
+                    fileCopier.transferAt(source, length, target, position, progress);
+                } finally {
+                    is.close();
+                }
+            } finally {
+                descriptor.close();
+            }
+        }
+    }
+
+    /**
+     * Uncompressed assets can be opened as a file descriptor pointing into the APK,
+     * so they are copied by the kernel without going through a Java buffer.
+     *
+     * @return false if the asset is compressed and has to be read as a stream
+     */
+    private boolean copyUncompressedAsset(AssetSource assets, String assetFilePath, FileOutputStream fos,
+                                          CopyProgress progress) throws IOException {
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = assets.openFd(assetFilePath);
+        } catch (FileNotFoundException e) {
+            return false;
+        }
+        try {
+            FileInputStream is = descriptor.createInputStream();
+            try {
+                FileChannel source = is.getChannel();
+                long length = descriptor.getLength();
+                if (length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                    length = source.size() - descriptor.getStartOffset();
+                }
+                fileCopier.transfer(source, descriptor.getStartOffset(), length, fos.getChannel(), progress);
+            } finally {
+                is.close();
+            }
+        } finally {
+            descriptor.close();
+        }
+        return true;
+    }
+
+    /**
+     * Removes temp files left in the folder by copies which were interrupted, e.g. when the process was killed,
+     * and lock files of destinations which don't exist anymore.
+     */
+    public void deleteOrphanedTempFiles(String destinationFolder) {
+        File[] files = new File(destinationFolder).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String path = file.getPath();
+            String destinationFilePath;
+            if (path.endsWith(Constants.TEMP_FILE_SUFFIX)) {
+                destinationFilePath = path.substring(0, path.length() - Constants.TEMP_FILE_SUFFIX.length());
+            } else if (path.endsWith(Constants.LOCK_FILE_SUFFIX)) {
+                destinationFilePath = path.substring(0, path.length() - Constants.LOCK_FILE_SUFFIX.length());
+            } else {
+                continue;
+            }
+            // another process may be writing the temp file right now, it holds the destination lock then
+            try {
+                ProcessLock lock = ProcessLock.tryAcquire(new File(destinationFilePath + Constants.LOCK_FILE_SUFFIX));
+                if (lock == null) {
+                    continue;
+                }
+                deleteTempFile(new File(destinationFilePath + Constants.TEMP_FILE_SUFFIX));
+                if (new File(destinationFilePath).exists()) {
+                    lock.release();
+                } else {
+                    lock.releaseAndDelete();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Locks the destination against other processes of the app, waiting while another process copies it,
+     * and reads the versions stored by other processes meanwhile.
+     *
+     * @return lock to release once the file is installed, or null if the lock file can't be created
+     */
+    public ProcessLock lockDestination(Context context, String destinationFilePath) {
+        ProcessLock lock;
+        try {
+            lock = ProcessLock.acquire(new File(destinationFilePath + Constants.LOCK_FILE_SUFFIX));
+        } catch (IOException e) {
+            // e.g. a read-only folder, the copy itself will fail with a clear error then
+            e.printStackTrace();
+            return null;
+        }
+        VersionManifest.get(context).refresh();
+        return lock;
+    }
+
+    /**
+     * @return false if the temp file can't be deleted now, {@link #deleteOrphanedTempFiles} removes it later
+     */
+    private boolean deleteTempFile(File tempFile) {
+        return !tempFile.exists() || tempFile.delete();
     }
 
     public String generateFilePath(String destinationFolder, String fileName) {
@@ -57,36 +595,102 @@ public class OsUtil {
         return destinationFolder + File.separator + fileName;
     }
 
+    /**
+     * @return version of the copied file or null if the file was never copied or doesn't exist anymore
+     */
     public Integer getCurrentFileVersion(Context context, String fullPathToFile) {
-        int currentVersion = PreferenceManager.getDefaultSharedPreferences(context).getInt(Constants.PREFERENCES_FILE_VERSION + fullPathToFile, -1);
-        return currentVersion == -1 ? null : currentVersion;
+        Integer version = VersionManifest.get(context).getVersion(fullPathToFile);
+        return version == null || !new File(fullPathToFile).exists() ? null : version;
+    }
+
+    /**
+     * @return asset folder the file was copied from, or null if it's unknown, the file was never copied or doesn't exist anymore
+     */
+    public String getFileAssetFolder(Context context, String fullPathToFile) {
+        VersionManifest.Record record = VersionManifest.get(context).get(fullPathToFile);
+        return record == null || !new File(fullPathToFile).exists() ? null : record.assetFolder;
+    }
+
+    /**
+     * Checks whether the file was verified against the currently installed APK.
+     * The APK can't have a newer asset then, so the assets don't need to be checked at all
+     */
+    public boolean isFileUpToDate(Context context, String destinationFolder, String fileName) {
+        String fullPathToFile = destinationFolder + File.separator + fileName;
+        VersionManifest.Record record = VersionManifest.get(context).get(fullPathToFile);
+        if (record == null || !ApkStamp.get(context).equals(record.apkStamp)) {
+            return false;
+        }
+        File file = new File(fullPathToFile);
+        return file.exists() && file.length() == record.size
+                && (integrityCheck == IntegrityCheck.NONE || file.lastModified() == record.lastModified);
+    }
+
+    /**
+     * Remembers that the file was verified against the currently installed APK
+     */
+    public void markFileUpToDate(Context context, String fullPathToFile) {
+        VersionManifest manifest = VersionManifest.get(context);
+        VersionManifest.Record record = manifest.get(fullPathToFile);
+        String apkStamp = ApkStamp.get(context);
+        if (record != null && !apkStamp.equals(record.apkStamp)) {
+            manifest.put(fullPathToFile, record.withApkStamp(apkStamp));
+        }
     }
 
     public int getAssetsFileVersion(Context context, String assetFolder, String fileName, String extension) {
-        String fileAsset = findAsset(context, assetFolder, fileName, extension);
-        return getAssetsFileVersion(fileAsset);
+        AssetIndex.Entry entry = findSourceEntry(context, assetFolder, fileName, extension);
+        return entry == null ? 0 : entry.version;
     }
 
     public int getAssetsFileVersion(String fileName) {
-        Pattern pattern = Pattern.compile(VERSION_PATTERN);
-        Matcher matcher = pattern.matcher(fileName);
+        AssetIndex.Entry entry = AssetIndex.parse(fileName.substring(fileName.lastIndexOf(File.separatorChar) + 1));
+        return entry == null ? 0 : entry.version;
+    }
 
-        if (matcher.find()) {
-            String group = matcher.group();
+    /**
+     * Stores the version of a file which doesn't belong to any asset folder, {@link AssetHelper#syncFolder} never removes it
+     */
+    public void storeFileVersion(Context context, int version, String fullPathToFile) {
+        storeFileVersion(context, null, version, fullPathToFile);
+    }
 
-            int endIndex = group.indexOf('.');
-            if (endIndex < 0) {
-                endIndex = group.length();
-            }
-            String version = group.substring(1, endIndex);
-            return Integer.parseInt(version);
+    /**
+     * The version is written in the background together with the ones stored meanwhile, see {@link #flushFileVersions}
+     *
+     * @param assetFolder asset folder the file was copied from
+     */
+    public void storeFileVersion(Context context, String assetFolder, int version, String fullPathToFile) {
+        mappedFileCache.invalidate(fullPathToFile);
+        File file = new File(fullPathToFile);
+        VersionManifest manifest = VersionManifest.get(context);
+        manifest.put(fullPathToFile, new VersionManifest.Record(version, file.length(), file.lastModified(),
+                copiedChecksums.remove(fullPathToFile), ApkStamp.get(context), System.currentTimeMillis(), assetFolder));
+    }
+
+    /**
+     * Writes the stored versions right away, e.g. before the destination lock is released,
+     * so a process waiting for the lock reads them instead of copying the files again
+     */
+    public void flushFileVersions(Context context) {
+        try {
+            VersionManifest.get(context).flush();
+        } catch (IOException e) {
+            // the background write retries, another process copies the file once more at worst
+            e.printStackTrace();
         }
-        return 0;
     }
 
-    public void storeFileVersion(Context context, int version, String fullPathToFile) {
-        PreferenceManager.getDefaultSharedPreferences(context)
-                .edit().putInt(Constants.PREFERENCES_FILE_VERSION + fullPathToFile, version).apply();
+    /**
+     * @return mapping of the copied file, shared until a new version is installed
+     * @throws FileNotFoundException if the file was never copied or doesn't exist anymore
+     */
+    public MappedAsset mapFile(Context context, String fullPathToFile) throws IOException {
+        Integer version = getCurrentFileVersion(context, fullPathToFile);
+        if (version == null) {
+            throw new FileNotFoundException("The file was not copied. Path: " + fullPathToFile);
+        }
+        return mappedFileCache.get(fullPathToFile, version);
     }
 
     public boolean isEmpty(String string) {
@@ -94,46 +698,203 @@ public class OsUtil {
     }
 
     /**
-     * expected asset name <fileName>_xx.yyy or <fileName>.yyy
+     * expected asset name <fileName>_xx.yyy or <fileName>.yyy, see {@link AssetIndex}
      */
     public boolean isFileAssetExists(Context context, String assetFolder, String fileName, String extension) {
-        return !TextUtils.isEmpty(findAsset(context, assetFolder, fileName, extension));
+        return findSourceEntry(context, assetFolder, fileName, extension) != null;
     }
 
-    public void clearCache() {
-        cachedAssetPath = null;
+    /**
+     * @return names of the files in the asset folder as they are stored when copied, i.e. without versions
+     * and without the extensions of registered decoders. Checksums and patches are not listed
+     * @throws IOException if the folder can't be listed
+     */
+    public Set<String> listAssetFiles(Context context, String assetFolder) throws IOException {
+        Set<String> fileNames = new TreeSet<>();
+        for (AssetIndex.Entry entry : assetCatalog.getIndex(context, getAssetSource(context), assetFolder).entries()) {
+            String fileName = getCopiedFileName(entry);
+            if (fileName != null && !isAssetFolder(context, assetFolder, entry)) {
+                fileNames.add(fileName);
+            }
+        }
+        return fileNames;
     }
 
-    private String findAsset(Context context, String path, String fileName, String extension) {
-        if (TextUtils.isEmpty(cachedAssetPath)) {
-            try {
-                String[] list = context.getAssets().list(path);
-                cachedAssetPath = findNeededAssetFile(list, path, fileName, extension);
-            } catch (IOException e) {
-                e.printStackTrace();
+    /**
+     * Asset folders can't be told from files without listing them, so only names without
+     * an extension and a version are checked
+     *
+     * @return names of the folders in the asset folder
+     * @throws IOException if the folder can't be listed
+     */
+    public Set<String> listAssetFolders(Context context, String assetFolder) throws IOException {
+        Set<String> folderNames = new TreeSet<>();
+        for (AssetIndex.Entry entry : assetCatalog.getIndex(context, getAssetSource(context), assetFolder).entries()) {
+            if (isAssetFolder(context, assetFolder, entry)) {
+                folderNames.add(entry.assetName);
             }
         }
-        return cachedAssetPath;
+        return folderNames;
     }
 
-    protected String findNeededAssetFile(String[] list, String path, String fileName, String extension) {
-        if (list != null && list.length > 0) {
-            for (String file : list) {
-                if (file != null && file.length() > 0) {
-                    boolean matches;
-                    if (extension == null) {
-                        matches = file.matches(fileName + VERSION_PATTERN) || file.matches(fileName);
-                    } else {
-                        String regex = fileName + VERSION_PATTERN + "[." + extension + "]";
-                        matches = file.matches(regex) || file.matches(fileName + "." + extension);
-                    }
+    /**
+     * Removes the copied file and forgets its version
+     *
+     * @return false if the file can't be deleted
+     */
+    public boolean deleteFile(Context context, String fullPathToFile) {
+        File file = new File(fullPathToFile);
+        if (file.exists() && !file.delete()) {
+            return false;
+        }
+        mappedFileCache.invalidate(fullPathToFile);
+        VersionManifest.get(context).remove(fullPathToFile);
+        return true;
+    }
 
-                    if (matches) {
-                        return path + File.separator + file;
-                    }
-                }
+    /**
+     * Removes the copied file with its lock file and forgets its version unless another process is copying it right now
+     *
+     * @return false if the file is locked by another process or can't be deleted
+     */
+    public boolean deleteFileIfUnlocked(Context context, String fullPathToFile) {
+        ProcessLock lock;
+        try {
+            lock = ProcessLock.tryAcquire(new File(fullPathToFile + Constants.LOCK_FILE_SUFFIX));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (lock == null) {
+            return false;
+        }
+        if (!deleteFile(context, fullPathToFile)) {
+            lock.release();
+            return false;
+        }
+        lock.releaseAndDelete();
+        return true;
+    }
+
+    /**
+     * Remembers when the copied file was requested, at most once per {@code resolutionMillis},
+     * so frequent requests don't rewrite the manifest every time
+     */
+    public void markFileAccessed(Context context, String fullPathToFile, long resolutionMillis) {
+        VersionManifest manifest = VersionManifest.get(context);
+        VersionManifest.Record record = manifest.get(fullPathToFile);
+        long now = System.currentTimeMillis();
+        if (record != null && Math.abs(now - record.lastAccess) >= resolutionMillis) {
+            manifest.put(fullPathToFile, record.withLastAccess(now));
+        }
+    }
+
+    /**
+     * @return records of all the copied files by path
+     */
+    public Map<String, VersionManifest.Record> getCopiedFiles(Context context) {
+        return VersionManifest.get(context).getAll();
+    }
+
+    /**
+     * @return true if the file has a shared mapping, see {@link #mapFile}
+     */
+    public boolean isFileMapped(String fullPathToFile) {
+        return mappedFileCache.contains(fullPathToFile);
+    }
+
+    private boolean isAssetFolder(Context context, String assetFolder, AssetIndex.Entry entry) throws IOException {
+        if (entry.extension != null || !entry.assetName.equals(entry.baseName)) {
+            return false;
+        }
+        // listing a file gives nothing
+        return assetCatalog.getIndex(context, getAssetSource(context), assetFolder + File.separator + entry.assetName).size() > 0;
+    }
+
+    /**
+     * @return name of the copy of the asset or null if the asset is not copied by itself
+     */
+    private String getCopiedFileName(AssetIndex.Entry entry) {
+        if (entry.extension == null) {
+            return entry.baseName;
+        }
+        String lastExtension = entry.extension.substring(entry.extension.lastIndexOf('.') + 1);
+        if (lastExtension.equals(Constants.SHA256_SIDECAR_EXTENSION) || lastExtension.equals(AssetPatch.EXTENSION)) {
+            return null;
+        }
+        for (AssetDecoder decoder : decoders) {
+            String suffix = "." + decoder.getExtension();
+            if (entry.extension.equals(decoder.getExtension())) {
+                // the compressed file is listed with its inner extension as well, if it has one
+                return AssetIndex.parseWithOuterExtension(entry.assetName) != null ? null : entry.baseName;
+            }
+            if (entry.extension.endsWith(suffix)) {
+                return entry.baseName + "." + entry.extension.substring(0, entry.extension.length() - suffix.length());
+            }
+        }
+        if (entry.extension.indexOf('.') != -1) {
+            // the same file is listed with its last extension only
+            return null;
+        }
+        return entry.baseName + "." + entry.extension;
+    }
+
+    /**
+     * Forgets all asset listings, the next lookup lists the asset folder again
+     */
+    public void clearCache() {
+        assetCatalog.invalidate();
+    }
+
+    /**
+     * Looks for the asset itself and its compressed variants, e.g. catalog_12.sqlite.gz for catalog.sqlite.
+     * The highest version is used whether it's compressed or not
+     */
+    private AssetIndex.Entry findSourceEntry(Context context, String path, String fileName, String extension) {
+        AssetIndex.Entry source = findAssetEntry(context, path, fileName, extension);
+        for (AssetDecoder decoder : decoders) {
+            AssetIndex.Entry compressed = findAssetEntry(context, path, fileName, compressedExtension(extension, decoder));
+            if (compressed != null && (source == null || compressed.version > source.version)) {
+                source = compressed;
+            }
+        }
+        return source;
+    }
+
+    /**
+     * @return decoder for a compressed variant of the requested file or null if the asset is the file itself
+     */
+    private AssetDecoder findDecoder(AssetIndex.Entry entry, String extension) {
+        for (AssetDecoder decoder : decoders) {
+            if (compressedExtension(extension, decoder).equals(entry.extension)) {
+                return decoder;
             }
         }
         return null;
     }
+
+    private static String compressedExtension(String extension, AssetDecoder decoder) {
+        return extension == null ? decoder.getExtension() : extension + "." + decoder.getExtension();
+    }
+
+    /**
+     * Every access to the assets goes through the returned source
+     */
+    AssetSource getAssetSource(Context context) {
+        return new AssetSource.Apk(context.getAssets());
+    }
+
+    private AssetIndex.Entry findAssetEntry(Context context, String path, String fileName, String extension) {
+        try {
+            return assetCatalog.getIndex(context, getAssetSource(context), path).find(fileName, extension);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    protected String findNeededAssetFile(String[] list, String path, String fileName, String extension) {
+        AssetIndex.Entry entry = AssetIndex.build(list).find(fileName, extension);
+        return entry == null ? null : path + File.separator + entry.assetName;
+    }
 }
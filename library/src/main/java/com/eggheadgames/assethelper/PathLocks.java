@@ -0,0 +1,66 @@
+package com.eggheadgames.assethelper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A lock for every path in use, so work on one file never waits for work on another one.
+ * Locks are created on demand and dropped when nobody holds or waits for them.
+ */
+class PathLocks {
+
+    private final Map<String, PathLock> locks = new HashMap<>();
+
+    void lock(String path) {
+        PathLock pathLock;
+        synchronized (locks) {
+            pathLock = locks.get(path);
+            if (pathLock == null) {
+                pathLock = new PathLock();
+                locks.put(path, pathLock);
+            }
+            pathLock.users++;
+        }
+        pathLock.lock.lock();
+    }
+
+    /**
+     * @return false if the path is locked by another thread, the lock is not taken then
+     */
+    boolean tryLock(String path) {
+        synchronized (locks) {
+            PathLock pathLock = locks.get(path);
+            if (pathLock == null) {
+                pathLock = new PathLock();
+                locks.put(path, pathLock);
+            }
+            if (!pathLock.lock.tryLock()) {
+                return false;
+            }
+            pathLock.users++;
+            return true;
+        }
+    }
+
+    void unlock(String path) {
+        synchronized (locks) {
+            PathLock pathLock = locks.get(path);
+            pathLock.lock.unlock();
+            if (--pathLock.users == 0) {
+                locks.remove(path);
+            }
+        }
+    }
+
+    int size() {
+        synchronized (locks) {
+            return locks.size();
+        }
+    }
+
+    private static class PathLock {
+        final ReentrantLock lock = new ReentrantLock();
+        int users;
+    }
+}
@@ -0,0 +1,170 @@
+package com.eggheadgames.assethelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Lock shared with other processes of the app, e.g. a :sync service, held on a small lock file.
+ * The kernel releases the lock when its process dies, so a crashed holder never blocks the others.
+ * <p>
+ * File locks belong to the whole process, and closing any descriptor of the file drops them,
+ * so a lock file is opened at most once per process: threads of the same process wait for each other
+ * before the file is opened. The lock isn't reentrant.
+ * <p>
+ * A lock file is deleted only by its holder, see {@link #releaseAndDelete()}. It's marked as deleted first,
+ * so a process which was waiting for the deleted file notices it and locks the new one instead.
+ */
+class ProcessLock {
+
+    /**
+     * Canonical paths of the lock files held or being acquired by this process
+     */
+    private static final Set<String> heldPaths = new HashSet<>();
+
+    private final String path;
+    private final File lockFile;
+    private final RandomAccessFile file;
+
+    private ProcessLock(String path, File lockFile, RandomAccessFile file) {
+        this.path = path;
+        this.lockFile = lockFile;
+        this.file = file;
+    }
+
+    /**
+     * Waits till the lock is free
+     */
+    static ProcessLock acquire(File lockFile) throws IOException {
+        String path = lockFile.getCanonicalPath();
+        reserve(path);
+        try {
+            while (true) {
+                RandomAccessFile file = open(lockFile);
+                try {
+                    file.getChannel().lock();
+                    if (!isDeleted(file)) {
+                        return new ProcessLock(path, lockFile, file);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    file.close();
+                    throw e;
+                }
+                file.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            unreserve(path);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the lock or null if it's held by this or another process
+     */
+    static ProcessLock tryAcquire(File lockFile) throws IOException {
+        String path = lockFile.getCanonicalPath();
+        synchronized (heldPaths) {
+            if (!heldPaths.add(path)) {
+                // opening the file again would release the lock of this process when it's closed
+                return null;
+            }
+        }
+        try {
+            while (true) {
+                RandomAccessFile file = open(lockFile);
+                FileLock lock;
+                try {
+                    lock = file.getChannel().tryLock();
+                    if (lock != null && !isDeleted(file)) {
+                        return new ProcessLock(path, lockFile, file);
+                    }
+                } catch (OverlappingFileLockException e) {
+                    lock = null;
+                } catch (IOException e) {
+                    file.close();
+                    throw e;
+                }
+                file.close();
+                if (lock == null) {
+                    unreserve(path);
+                    return null;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            unreserve(path);
+            throw e;
+        }
+    }
+
+    void release() {
+        try {
+            // closing the channel releases the lock
+            file.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            unreserve(path);
+        }
+    }
+
+    /**
+     * Deletes the lock file, e.g. once the file it guards is deleted, and releases the lock
+     */
+    void releaseAndDelete() {
+        try {
+            file.seek(0);
+            file.write(1);
+            if (!lockFile.delete()) {
+                // the file stays in use, so it mustn't look deleted
+                file.setLength(0);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * @return true if the locked file was deleted by its previous holder, a new file has to be locked then
+     */
+    private static boolean isDeleted(RandomAccessFile file) throws IOException {
+        return file.length() > 0;
+    }
+
+    private static void reserve(String path) {
+        boolean interrupted = false;
+        synchronized (heldPaths) {
+            while (!heldPaths.add(path)) {
+                try {
+                    heldPaths.wait();
+                } catch (InterruptedException e) {
+                    // the interrupt is kept for the caller
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void unreserve(String path) {
+        synchronized (heldPaths) {
+            heldPaths.remove(path);
+            heldPaths.notifyAll();
+        }
+    }
+
+    private static RandomAccessFile open(File lockFile) throws IOException {
+        File folder = lockFile.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs() && !folder.exists()) {
+            throw new IOException("Can not create folder. Path: " + folder);
+        }
+        return new RandomAccessFile(lockFile, "rw");
+    }
+}
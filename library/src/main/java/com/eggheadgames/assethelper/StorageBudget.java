@@ -0,0 +1,180 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the copied files within a size budget by removing the least recently used ones,
+ * see {@link AssetHelper#setStorageBudget}. A removed file has no stored version,
+ * so the next request copies it again.
+ * <p>
+ * Files which are pinned, mapped, held by an {@link AssetHandle} or being copied are never removed.
+ * Neither are files requested within the last {@link #ACCESS_RESOLUTION_MILLIS}, a caller may be about to open them,
+ * so the budget can be exceeded for a while.
+ */
+class StorageBudget {
+
+    /**
+     * Last access is stored at most once a minute per file, which is precise enough to find the least used files
+     */
+    static final long ACCESS_RESOLUTION_MILLIS = 60 * 1000;
+
+    private final PathLocks pathLocks;
+    private final Executor executor;
+    private final Set<String> pins = new CopyOnWriteArraySet<>();
+    private final Map<String, Integer> leases = new HashMap<>();
+    private final AtomicBoolean trimScheduled = new AtomicBoolean();
+    private volatile long budget;
+
+    StorageBudget(PathLocks pathLocks, Executor executor) {
+        this.pathLocks = pathLocks;
+        this.executor = executor;
+    }
+
+    /**
+     * @param budget size of all the copied files in bytes, or 0 for no limit
+     */
+    void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * @param path a file, or a folder to pin all the files in it
+     */
+    void pin(String path) {
+        pins.add(new File(path).getAbsolutePath());
+    }
+
+    void unpin(String path) {
+        pins.remove(new File(path).getAbsolutePath());
+    }
+
+    /**
+     * Keeps the file till it's released, a file can be acquired several times
+     */
+    void acquire(String path) {
+        synchronized (leases) {
+            Integer count = leases.get(path);
+            leases.put(path, count == null ? 1 : count + 1);
+        }
+    }
+
+    void release(String path) {
+        synchronized (leases) {
+            Integer count = leases.get(path);
+            if (count == null || count == 1) {
+                leases.remove(path);
+            } else {
+                leases.put(path, count - 1);
+            }
+        }
+    }
+
+    void onAccess(Context context, OsUtil osUtil, String path) {
+        if (isEnabled()) {
+            osUtil.markFileAccessed(context, path, ACCESS_RESOLUTION_MILLIS);
+        }
+    }
+
+    /**
+     * Trims the files in the background, several requests in a row are done at once
+     */
+    void scheduleTrim(final Context context, final OsUtil osUtil) {
+        if (!isEnabled() || !trimScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                trimScheduled.set(false);
+                trim(context, osUtil);
+            }
+        });
+    }
+
+    /**
+     * Removes the least recently used files till the rest fits into the budget
+     *
+     * @return number of removed files
+     */
+    int trim(Context context, OsUtil osUtil) {
+        long currentBudget = budget;
+        if (currentBudget <= 0) {
+            return 0;
+        }
+        List<Map.Entry<String, VersionManifest.Record>> files = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<String, VersionManifest.Record> entry : osUtil.getCopiedFiles(context).entrySet()) {
+            // a file removed by someone else doesn't take any room
+            if (new File(entry.getKey()).exists()) {
+                files.add(entry);
+                total += entry.getValue().size;
+            }
+        }
+        if (total <= currentBudget) {
+            return 0;
+        }
+        Collections.sort(files, new Comparator<Map.Entry<String, VersionManifest.Record>>() {
+            @Override
+            public int compare(Map.Entry<String, VersionManifest.Record> first, Map.Entry<String, VersionManifest.Record> second) {
+                long firstAccess = first.getValue().lastAccess;
+                long secondAccess = second.getValue().lastAccess;
+                return firstAccess < secondAccess ? -1 : (firstAccess == secondAccess ? 0 : 1);
+            }
+        });
+
+        int evicted = 0;
+        long recentAccess = System.currentTimeMillis() - ACCESS_RESOLUTION_MILLIS;
+        for (Map.Entry<String, VersionManifest.Record> entry : files) {
+            if (total <= currentBudget || entry.getValue().lastAccess > recentAccess) {
+                // files are sorted by the last access, the rest were used recently as well
+                break;
+            }
+            String path = entry.getKey();
+            if (isPinned(path) || osUtil.isFileMapped(path) || !pathLocks.tryLock(path)) {
+                continue;
+            }
+            try {
+                // checked under the lock, a handle takes its lease before it copies the file
+                if (!isLeased(path) && osUtil.deleteFileIfUnlocked(context, path)) {
+                    total -= entry.getValue().size;
+                    evicted++;
+                }
+            } finally {
+                pathLocks.unlock(path);
+            }
+        }
+        return evicted;
+    }
+
+    private boolean isPinned(String path) {
+        String absolutePath = new File(path).getAbsolutePath();
+        for (String pin : pins) {
+            if (absolutePath.equals(pin) || absolutePath.startsWith(pin + File.separator)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isLeased(String path) {
+        synchronized (leases) {
+            return leases.containsKey(path);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.eggheadgames.assethelper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+
+/**
+ * Checksum which is updated with the bytes as they are copied, so the file doesn't have to be read twice.
+ * Values are stored as "algorithm:hex", e.g. "crc32:1c291ca3"
+ */
+abstract class StreamDigest {
+
+    static final String CRC32_PREFIX = "crc32:";
+    static final String SHA256_PREFIX = "sha256:";
+
+    abstract void update(byte[] buffer, int offset, int length);
+
+    abstract String getValue();
+
+    /**
+     * @return digest for the integrity check or null for {@link IntegrityCheck#NONE}
+     */
+    static StreamDigest create(IntegrityCheck integrityCheck) {
+        switch (integrityCheck) {
+            case CRC32:
+                return new Crc32Digest();
+            case SHA256:
+                return new Sha256Digest();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * @return digest of the same algorithm as the stored value or null if the algorithm is unknown
+     */
+    static StreamDigest forValue(String value) {
+        if (value.startsWith(CRC32_PREFIX)) {
+            return new Crc32Digest();
+        } else if (value.startsWith(SHA256_PREFIX)) {
+            return new Sha256Digest();
+        }
+        return null;
+    }
+
+    private static class Crc32Digest extends StreamDigest {
+        private final CRC32 crc32 = new CRC32();
+
+        @Override
+        void update(byte[] buffer, int offset, int length) {
+            crc32.update(buffer, offset, length);
+        }
+
+        @Override
+        String getValue() {
+            return CRC32_PREFIX + Long.toHexString(crc32.getValue());
+        }
+    }
+
+    private static class Sha256Digest extends StreamDigest {
+        private final MessageDigest digest;
+
+        Sha256Digest() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        void update(byte[] buffer, int offset, int length) {
+            digest.update(buffer, offset, length);
+        }
+
+        @Override
+        String getValue() {
+            byte[] hash = digest.digest();
+            StringBuilder builder = new StringBuilder(SHA256_PREFIX);
+            for (byte b : hash) {
+                builder.append(String.format(Locale.US, "%02x", b & 0xff));
+            }
+            return builder.toString();
+        }
+    }
+}
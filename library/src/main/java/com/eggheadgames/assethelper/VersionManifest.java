@@ -0,0 +1,385 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Stores versions of the copied files in a small binary file of its own,
+ * so checking a version doesn't load all the app preferences.
+ * <p>
+ * The manifest is read lazily on the first access and kept in memory.
+ * Changes are written in the background, several changes made in a row are written at once,
+ * or right away by {@link #flush()}.
+ * The file is replaced atomically, so a crash never leaves a half-written manifest.
+ * Other processes of the app share the file: it's written under a {@link ProcessLock},
+ * and the records written by others are merged with the local changes before every write and on {@link #refresh()}.
+ * Versions stored by older releases in the default SharedPreferences are moved to the manifest
+ * on the first access.
+ */
+class VersionManifest {
+
+    private static final int MAGIC = 0x41484d46;
+    private static final int FORMAT_VERSION = 1;
+    private static final String FOLDER = "assethelper";
+    private static final String FILE_NAME = "versions.manifest";
+
+    private static final Random writeIds = new Random();
+
+    private static VersionManifest sharedInstance;
+
+    private final File file;
+    private final File lockFile;
+    private final Context context;
+    private final Executor writer;
+    private final Object writeLock = new Object();
+    private Map<String, Record> records;
+    /**
+     * Paths changed by this process since the last write
+     */
+    private final Set<String> changedPaths = new HashSet<>();
+    /**
+     * Id of the last write read or made by this process, it tells whether another process wrote the file since
+     */
+    private long writeId;
+    private List<String> migratedLegacyKeys;
+    private boolean writeScheduled;
+
+    VersionManifest(File file, Context context, Executor writer) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + Constants.LOCK_FILE_SUFFIX);
+        this.context = context;
+        this.writer = writer;
+    }
+
+    static synchronized VersionManifest get(Context context) {
+        if (sharedInstance == null) {
+            File folder = new File(context.getFilesDir(), FOLDER);
+            sharedInstance = new VersionManifest(new File(folder, FILE_NAME), context,
+                    Executors.newSingleThreadExecutor(new NamedThreadFactory("AssetHelperManifest")));
+        }
+        return sharedInstance;
+    }
+
+    synchronized Record get(String path) {
+        return getRecords().get(path);
+    }
+
+    /**
+     * @return copy of all records by path
+     */
+    synchronized Map<String, Record> getAll() {
+        return new HashMap<>(getRecords());
+    }
+
+    synchronized Integer getVersion(String path) {
+        Record record = get(path);
+        return record == null ? null : record.version;
+    }
+
+    synchronized void put(String path, Record record) {
+        getRecords().put(path, record);
+        changedPaths.add(path);
+        scheduleWrite();
+    }
+
+    synchronized void remove(String path) {
+        if (getRecords().remove(path) != null) {
+            changedPaths.add(path);
+            scheduleWrite();
+        }
+    }
+
+    /**
+     * Reads the records written by other processes since the last read or write.
+     * Changes of this process which are not written yet are kept.
+     */
+    synchronized void refresh() {
+        if (records == null || !file.exists()) {
+            return;
+        }
+        try {
+            if (readWriteId() == writeId) {
+                return;
+            }
+            Map<String, Record> written = read();
+            for (String path : changedPaths) {
+                Record record = records.get(path);
+                if (record == null) {
+                    written.remove(path);
+                } else {
+                    written.put(path, record);
+                }
+            }
+            records = written;
+        } catch (IOException e) {
+            // the records in memory are kept, the next write replaces the damaged file
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes pending changes right away, does nothing if they are written already
+     */
+    void flush() throws IOException {
+        // a single writer at a time, otherwise an older snapshot could replace a newer one
+        synchronized (writeLock) {
+            synchronized (this) {
+                if (changedPaths.isEmpty() && migratedLegacyKeys == null) {
+                    return;
+                }
+            }
+            ProcessLock processLock = ProcessLock.acquire(lockFile);
+            try {
+                Map<String, Record> snapshot;
+                Set<String> writtenPaths;
+                List<String> legacyKeys;
+                synchronized (this) {
+                    refresh();
+                    snapshot = new HashMap<>(getRecords());
+                    writtenPaths = new HashSet<>(changedPaths);
+                    changedPaths.clear();
+                    legacyKeys = migratedLegacyKeys;
+                    migratedLegacyKeys = null;
+                }
+                long id = writeIds.nextLong();
+                try {
+                    write(snapshot, id);
+                } catch (IOException e) {
+                    synchronized (this) {
+                        changedPaths.addAll(writtenPaths);
+                        if (legacyKeys != null && migratedLegacyKeys == null) {
+                            migratedLegacyKeys = legacyKeys;
+                        }
+                    }
+                    throw e;
+                }
+                synchronized (this) {
+                    writeId = id;
+                }
+                if (legacyKeys != null) {
+                    removeLegacyPreferences(legacyKeys);
+                }
+            } finally {
+                processLock.release();
+            }
+        }
+    }
+
+    /**
+     * @return default preferences where older releases stored versions
+     */
+    SharedPreferences getLegacyPreferences() {
+        return PreferenceManager.getDefaultSharedPreferences(context);
+    }
+
+    private Map<String, Record> getRecords() {
+        if (records == null) {
+            records = new HashMap<>();
+            if (file.exists()) {
+                try {
+                    records = read();
+                } catch (IOException e) {
+                    // the copies are made again, which recreates the manifest
+                    e.printStackTrace();
+                }
+            } else {
+                migrateLegacyPreferences();
+            }
+        }
+        return records;
+    }
+
+    private void scheduleWrite() {
+        if (writeScheduled) {
+            return;
+        }
+        writeScheduled = true;
+        writer.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (VersionManifest.this) {
+                    writeScheduled = false;
+                }
+                try {
+                    flush();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+    }
+
+    /**
+     * Sets the write id to the one of the read file
+     */
+    private Map<String, Record> read() throws IOException {
+        Map<String, Record> records = new HashMap<>();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            readFormat(in);
+            writeId = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                int version = in.readInt();
+                long size = in.readLong();
+                long lastModified = in.readLong();
+                String checksum = in.readUTF();
+                String apkStamp = in.readUTF();
+                long lastAccess = in.readLong();
+                String assetFolder = in.readUTF();
+                records.put(path, new Record(version, size, lastModified, emptyToNull(checksum), emptyToNull(apkStamp), lastAccess,
+                        emptyToNull(assetFolder)));
+            }
+        } finally {
+            in.close();
+        }
+        return records;
+    }
+
+    /**
+     * Reads only the header, so checking for changes of other processes is cheap
+     */
+    private long readWriteId() throws IOException {
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            readFormat(in);
+            return in.readLong();
+        } finally {
+            in.close();
+        }
+    }
+
+    private void readFormat(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unknown manifest format: " + file);
+        }
+    }
+
+    private void write(Map<String, Record> snapshot, long id) throws IOException {
+        File folder = file.getParentFile();
+        if (folder != null && !folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Can not create folder. Path: " + folder);
+        }
+        File tempFile = new File(file.getPath() + Constants.TEMP_FILE_SUFFIX);
+        FileOutputStream fos = new FileOutputStream(tempFile);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(id);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, Record> entry : snapshot.entrySet()) {
+                Record record = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(record.version);
+                out.writeLong(record.size);
+                out.writeLong(record.lastModified);
+                out.writeUTF(record.checksum == null ? "" : record.checksum);
+                out.writeUTF(record.apkStamp == null ? "" : record.apkStamp);
+                out.writeLong(record.lastAccess);
+                out.writeUTF(record.assetFolder == null ? "" : record.assetFolder);
+            }
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tempFile.renameTo(file)) {
+            throw new IOException("Can not replace manifest. Path: " + file);
+        }
+    }
+
+    /**
+     * Legacy preferences are removed only after the manifest with their versions is written
+     */
+    private void migrateLegacyPreferences() {
+        List<String> legacyKeys = new ArrayList<>();
+        for (Map.Entry<String, ?> entry : getLegacyPreferences().getAll().entrySet()) {
+            String key = entry.getKey();
+            if (key.startsWith(Constants.PREFERENCES_FILE_VERSION) && entry.getValue() instanceof Integer) {
+                String path = key.substring(Constants.PREFERENCES_FILE_VERSION.length());
+                File copiedFile = new File(path);
+                records.put(path, new Record((Integer) entry.getValue(), copiedFile.length(), copiedFile.lastModified(), null, null));
+                changedPaths.add(path);
+                legacyKeys.add(key);
+            }
+        }
+        if (!legacyKeys.isEmpty()) {
+            migratedLegacyKeys = legacyKeys;
+            scheduleWrite();
+        }
+    }
+
+    private void removeLegacyPreferences(List<String> legacyKeys) {
+        SharedPreferences.Editor editor = getLegacyPreferences().edit();
+        for (String key : legacyKeys) {
+            editor.remove(key);
+        }
+        editor.apply();
+    }
+
+    private static String emptyToNull(String string) {
+        return string.isEmpty() ? null : string;
+    }
+
+    static class Record {
+        final int version;
+        final long size;
+        final long lastModified;
+        final String checksum;
+        /**
+         * APK which was installed when the file was checked last time, see {@link ApkStamp}
+         */
+        final String apkStamp;
+        /**
+         * Time the file was last requested through AssetHelper, see {@link StorageBudget}
+         */
+        final long lastAccess;
+        /**
+         * Asset folder the file was copied from, null if it's unknown, see {@link FolderSync}
+         */
+        final String assetFolder;
+
+        Record(int version, long size, long lastModified, String checksum, String apkStamp) {
+            this(version, size, lastModified, checksum, apkStamp, lastModified, null);
+        }
+
+        Record(int version, long size, long lastModified, String checksum, String apkStamp, long lastAccess, String assetFolder) {
+            this.version = version;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.checksum = checksum;
+            this.apkStamp = apkStamp;
+            this.lastAccess = lastAccess;
+            this.assetFolder = assetFolder;
+        }
+
+        Record withApkStamp(String apkStamp) {
+            return new Record(version, size, lastModified, checksum, apkStamp, lastAccess, assetFolder);
+        }
+
+        Record withLastAccess(long lastAccess) {
+            return new Record(version, size, lastModified, checksum, apkStamp, lastAccess, assetFolder);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AssetCatalogTest {
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private PackageManager packageManager;
+
+    private FakeAssetSource assets;
+    private AssetCatalog catalog;
+
+    @Before
+    public void init() throws Exception {
+        when(context.getPackageManager()).thenReturn(packageManager);
+        when(context.getPackageName()).thenReturn("com.example");
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(new PackageInfo());
+        assets = new FakeAssetSource().folder(TestConstants.ASSET_FOLDER, "filename_3.ext");
+
+        catalog = new AssetCatalog();
+        catalog.invalidate();
+    }
+
+    @Test
+    public void onRepeatedLookups_folderShouldBeListedOnce() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            AssetIndex.Entry entry = catalog.getIndex(context, assets, TestConstants.ASSET_FOLDER).find(TestConstants.FILE_NAME, TestConstants.FILE_EXTENSION);
+            Assert.assertEquals(3, entry.version);
+        }
+
+        Assert.assertEquals(1, assets.getListCount(TestConstants.ASSET_FOLDER));
+    }
+
+    @Test
+    public void onInvalidate_folderShouldBeListedAgain() throws Exception {
+        catalog.getIndex(context, assets, TestConstants.ASSET_FOLDER);
+        catalog.invalidate();
+        catalog.getIndex(context, assets, TestConstants.ASSET_FOLDER);
+
+        Assert.assertEquals(2, assets.getListCount(TestConstants.ASSET_FOLDER));
+    }
+
+    @Test
+    public void onConcurrentLookups_folderShouldBeListedOnce() throws Exception {
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        catalog.getIndex(context, assets, TestConstants.ASSET_FOLDER);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(1, assets.getListCount(TestConstants.ASSET_FOLDER));
+    }
+}
@@ -101,4 +101,91 @@ public class AssetFileNameMatcherTest {
         String neededAsset = osUtil.findNeededAssetFile(list, "folder1", "file2", null);
         Assert.assertNull(neededAsset);
     }
+
+    @Test
+    public void checkVersion_SingleDigitWithoutExtension_ShouldReturnCorrectVersion() {
+        int version = osUtil.getAssetsFileVersion("name_7");
+        Assert.assertEquals(7, version);
+    }
+
+    @Test
+    public void checkVersion_NameWithUnderscores_ShouldReturnCorrectVersion() {
+        int version = osUtil.getAssetsFileVersion("my_1st_db_3.db");
+        Assert.assertEquals(3, version);
+    }
+
+    @Test
+    public void checkFiltration_SeveralVersions_ShouldReturnHighestVersion() {
+        String[] list = new String[3]; // available file on asset
+        list[0] = "data_9.db";
+        list[1] = "data_12.db";
+        list[2] = "data.db";
+
+        String neededAsset = osUtil.findNeededAssetFile(list, "databases", "data", "db");
+        Assert.assertEquals("databases" + File.separator + "data_12.db", neededAsset);
+    }
+
+    @Test
+    public void checkFiltration_DifferentExtension_ShouldReturnNull() {
+        String[] list = new String[2]; // available file on asset
+        list[0] = "data_2.bd";
+        list[1] = "data_2.db.bak";
+
+        String neededAsset = osUtil.findNeededAssetFile(list, "databases", "data", "db");
+        Assert.assertNull(neededAsset);
+    }
+
+    @Test
+    public void checkFiltration_NameWithRegexCharacters_ShouldMatchLiterally() {
+        String[] list = new String[2]; // available file on asset
+        list[0] = "fileXname_3.db";
+        list[1] = "file.name_2.db";
+
+        String neededAsset = osUtil.findNeededAssetFile(list, "folder1", "file.name", "db");
+        Assert.assertEquals("folder1" + File.separator + "file.name_2.db", neededAsset);
+    }
+
+    @Test
+    public void checkFiltration_CompressedVariant_ShouldBeFoundWithOuterExtension() {
+        String[] list = new String[3]; // available file on asset
+        list[0] = "catalog_11.sqlite";
+        list[1] = "catalog_12.sqlite.gz";
+        list[2] = "f.qwer";
+
+        Assert.assertEquals("data" + File.separator + "catalog_11.sqlite", osUtil.findNeededAssetFile(list, "data", "catalog", "sqlite"));
+        Assert.assertEquals("data" + File.separator + "catalog_12.sqlite.gz", osUtil.findNeededAssetFile(list, "data", "catalog", "sqlite.gz"));
+        Assert.assertEquals(12, AssetIndex.build(list).find("catalog", "sqlite.gz").version);
+    }
+
+    @Test
+    public void checkFiltration_SplitFile_ShouldBeFoundAsOneVersionWithPartsInOrder() {
+        String[] list = new String[]{"bigdb_20.sqlite.part10", "bigdb_19.sqlite", "bigdb_20.sqlite.part02", "bigdb_20.sqlite.part01",
+                "bigdb_20.sqlite.part03", "bigdb_20.sqlite.part04", "bigdb_20.sqlite.part05", "bigdb_20.sqlite.part06",
+                "bigdb_20.sqlite.part07", "bigdb_20.sqlite.part08", "bigdb_20.sqlite.part09"};
+
+        Assert.assertEquals("data" + File.separator + "bigdb_20.sqlite", osUtil.findNeededAssetFile(list, "data", "bigdb", "sqlite"));
+        AssetIndex.Entry entry = AssetIndex.build(list).find("bigdb", "sqlite");
+        Assert.assertEquals(20, entry.version);
+        Assert.assertEquals(10, entry.parts.length);
+        Assert.assertEquals("bigdb_20.sqlite.part01", entry.parts[0]);
+        Assert.assertEquals("bigdb_20.sqlite.part10", entry.parts[9]);
+    }
+
+    @Test
+    public void checkFiltration_SplitFileWithMissingPart_ShouldBeIgnored() {
+        String[] list = new String[]{"bigdb_19.sqlite", "bigdb_20.sqlite.part01", "bigdb_20.sqlite.part03"};
+
+        AssetIndex.Entry entry = AssetIndex.build(list).find("bigdb", "sqlite");
+        Assert.assertEquals(19, entry.version);
+        Assert.assertNull(entry.parts);
+    }
+
+    @Test
+    public void checkFiltration_CompressedSplitFile_ShouldBeFoundWithOuterExtension() {
+        String[] list = new String[]{"bigdb_20.sqlite.gz.part1", "bigdb_20.sqlite.gz.part2"};
+
+        AssetIndex.Entry entry = AssetIndex.build(list).find("bigdb", "sqlite.gz");
+        Assert.assertEquals(20, entry.version);
+        Assert.assertEquals(2, entry.parts.length);
+    }
 }
@@ -0,0 +1,192 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Copies the same few files from many threads at once
+ */
+public class AssetHelperConcurrencyTest {
+
+    private static final int FILES = 4;
+    private static final int THREADS_PER_FILE = 8;
+    private static final int ROUNDS = 20;
+
+    private FakeOsUtil osUtil;
+    private AssetHelper assetHelper;
+
+    @Before
+    public void init() {
+        osUtil = new FakeOsUtil();
+        assetHelper = new AssetHelper();
+        assetHelper.mOsUtil = osUtil;
+    }
+
+    @Test
+    public void onConcurrentCopies_eachFileShouldBeWrittenOnceAndFilesInParallel() throws InterruptedException {
+        for (int round = 1; round <= ROUNDS; round++) {
+            osUtil.startRound(round);
+            runCopies();
+
+            Assert.assertNull(osUtil.failure.get());
+            Assert.assertTrue("copies of different files didn't run in parallel", osUtil.parallel);
+            for (int file = 0; file < FILES; file++) {
+                Assert.assertEquals(round, osUtil.copies.get(path(file)).get());
+                Assert.assertEquals(Integer.valueOf(round), osUtil.versions.get(path(file)));
+            }
+        }
+    }
+
+    private void runCopies() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < FILES * THREADS_PER_FILE; i++) {
+            final String fileName = fileName(i % FILES);
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, fileName, TestConstants.DESTINATION_FOLDER_PATH);
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(error.get());
+    }
+
+    private static String fileName(int file) {
+        return "file" + file + ".db";
+    }
+
+    private static String path(int file) {
+        return TestConstants.DESTINATION_FOLDER_PATH + "/" + fileName(file);
+    }
+
+    /**
+     * Keeps versions in memory and checks that a destination never has two writers
+     */
+    private static class FakeOsUtil extends OsUtil {
+
+        final Map<String, Integer> versions = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> copies = new ConcurrentHashMap<>();
+        final Map<String, AtomicInteger> writers = new ConcurrentHashMap<>();
+        final AtomicReference<String> failure = new AtomicReference<>();
+        volatile int assetsVersion;
+        volatile boolean parallel;
+        private volatile CountDownLatch allFilesCopying;
+
+        void startRound(int version) {
+            assetsVersion = version;
+            allFilesCopying = new CountDownLatch(FILES);
+            parallel = true;
+        }
+
+        @Override
+        public String loadFileToLocalStorage(Context context, String assetFolder, String fileName, String extension,
+                                             String destinationFilePath, CopyProgress progress) {
+            AtomicInteger writer = get(writers, destinationFilePath);
+            if (writer.incrementAndGet() != 1) {
+                failure.compareAndSet(null, "Two writers of " + destinationFilePath);
+            }
+            try {
+                // every file waits for the others, which succeeds only if they are copied at the same time
+                allFilesCopying.countDown();
+                if (!allFilesCopying.await(5, TimeUnit.SECONDS)) {
+                    parallel = false;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            get(copies, destinationFilePath).incrementAndGet();
+            writer.decrementAndGet();
+            return destinationFilePath;
+        }
+
+        @Override
+        public void storeFileVersion(Context context, String assetFolder, int version, String fullPathToFile) {
+            versions.put(fullPathToFile, version);
+        }
+
+        @Override
+        public Integer getCurrentFileVersion(Context context, String fullPathToFile) {
+            return versions.get(fullPathToFile);
+        }
+
+        @Override
+        public int getAssetsFileVersion(Context context, String assetFolder, String fileName, String extension) {
+            return assetsVersion;
+        }
+
+        @Override
+        public boolean isFileUpToDate(Context context, String destinationFolder, String fileName) {
+            return false;
+        }
+
+        @Override
+        public boolean isFileAssetExists(Context context, String assetFolder, String fileName, String extension) {
+            return true;
+        }
+
+        @Override
+        public boolean applyPatch(Context context, String assetFolder, String fileName, int fromVersion, int toVersion,
+                                  String destinationFilePath) {
+            return false;
+        }
+
+        @Override
+        public String generateFilePath(String destinationFolder, String fileName) {
+            return destinationFolder + "/" + fileName;
+        }
+
+        @Override
+        public void deleteOrphanedTempFiles(String destinationFolder) {
+        }
+
+        @Override
+        public ProcessLock lockDestination(Context context, String destinationFilePath) {
+            return null;
+        }
+
+        @Override
+        public void markFileUpToDate(Context context, String fullPathToFile) {
+        }
+
+        @Override
+        public boolean isEmpty(String string) {
+            return string == null || string.isEmpty();
+        }
+
+        private static AtomicInteger get(Map<String, AtomicInteger> counters, String path) {
+            synchronized (counters) {
+                AtomicInteger counter = counters.get(path);
+                if (counter == null) {
+                    counter = new AtomicInteger();
+                    counters.put(path, counter);
+                }
+                return counter;
+            }
+        }
+    }
+}
@@ -12,8 +12,18 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -45,7 +55,7 @@ public class AssetHelperTest {
         when(osUtil.isFileAssetExists(any(Context.class), anyString(), anyString(), anyString())).thenReturn(true);
 
         when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(),
-                anyString(), anyString(), anyString())).thenReturn(TestConstants.FILE_PATH);
+                anyString(), anyString(), anyString(), Mockito.<CopyProgress>any())).thenReturn(TestConstants.FILE_PATH);
 
         when(osUtil.generateFilePath(anyString(), anyString())).thenReturn(TestConstants.FILE_PATH);
 
@@ -71,7 +81,7 @@ public class AssetHelperTest {
 
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
 
-        verify(osUtil, Mockito.times(1)).storeFileVersion(context, 2, TestConstants.FILE_PATH);
+        verify(osUtil, Mockito.times(1)).storeFileVersion(context, TestConstants.ASSET_FOLDER, 2, TestConstants.FILE_PATH);
     }
 
     @Test
@@ -81,7 +91,7 @@ public class AssetHelperTest {
 
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
 
-        verify(osUtil, Mockito.times(1)).storeFileVersion(context, 2, TestConstants.FILE_PATH);
+        verify(osUtil, Mockito.times(1)).storeFileVersion(context, TestConstants.ASSET_FOLDER, 2, TestConstants.FILE_PATH);
     }
 
     @Test
@@ -91,7 +101,7 @@ public class AssetHelperTest {
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
 
         verify(osUtil, Mockito.times(1))
-                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString());
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
     }
 
     @Test
@@ -102,7 +112,7 @@ public class AssetHelperTest {
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
 
         verify(osUtil, Mockito.times(1))
-                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString());
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
     }
 
     @Test
@@ -112,7 +122,7 @@ public class AssetHelperTest {
 
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
         verify(osUtil, Mockito.never())
-                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString());
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
     }
 
     @Test
@@ -147,7 +157,7 @@ public class AssetHelperTest {
         when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
 
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
-        verify(osUtil, Mockito.times(1)).storeFileVersion(context, 2, TestConstants.FILE_PATH);
+        verify(osUtil, Mockito.times(1)).storeFileVersion(context, TestConstants.ASSET_FOLDER, 2, TestConstants.FILE_PATH);
     }
 
     @Test(expected = RuntimeException.class)
@@ -155,7 +165,460 @@ public class AssetHelperTest {
         when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(1);
         when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
 
-        when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString())).thenReturn(null);
+        when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any())).thenReturn(null);
+        assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+    }
+
+    @Test
+    public void onBatchCopy_eachFileShouldGetItsResult() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        when(osUtil.getCurrentFileVersion(context, TestConstants.FILE_PATH_SECOND)).thenReturn(null);
+        when(osUtil.generateFilePath(TestConstants.DESTINATION_FOLDER_PATH, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND))
+                .thenReturn(TestConstants.FILE_PATH_SECOND);
+
+        AssetCopyRequest first = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        AssetCopyRequest second = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND, TestConstants.DESTINATION_FOLDER_PATH);
+        Map<AssetCopyRequest, CopyFileToStorageResult> results = assetHelper.copyAllIfNew(Arrays.asList(first, second));
+
+        Assert.assertEquals(2, results.size());
+        Assert.assertEquals(AssetHelperStatus.IGNORED, results.get(first).getStatus());
+        Assert.assertEquals(AssetHelperStatus.INSTALLED, results.get(second).getStatus());
+        verify(osUtil, Mockito.never()).clearCache();
+    }
+
+    @Test
+    public void onCopyUnderProcessLock_versionShouldBeWrittenBeforeRelease() throws IOException {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        final File lockFile = File.createTempFile("copy", Constants.LOCK_FILE_SUFFIX);
+        when(osUtil.lockDestination(context, TestConstants.FILE_PATH)).thenReturn(ProcessLock.acquire(lockFile));
+        final List<Boolean> lockedWhileFlushing = new ArrayList<>();
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws IOException {
+                lockedWhileFlushing.add(ProcessLock.tryAcquire(lockFile) == null);
+                return null;
+            }
+        }).when(osUtil).flushFileVersions(context);
+
+        assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        // a process waiting for the lock reads the version once it gets the lock
+        Assert.assertEquals(Collections.singletonList(true), lockedWhileFlushing);
+        ProcessLock released = ProcessLock.tryAcquire(lockFile);
+        Assert.assertNotNull(released);
+        released.release();
+        Assert.assertTrue(lockFile.delete());
+    }
+
+    @Test
+    public void onBatchCopy_versionsShouldBeWrittenOnce() throws IOException {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        when(osUtil.generateFilePath(TestConstants.DESTINATION_FOLDER_PATH, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND))
+                .thenReturn(TestConstants.FILE_PATH_SECOND);
+        mockProcessLocks();
+
+        AssetCopyRequest first = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        AssetCopyRequest second = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND, TestConstants.DESTINATION_FOLDER_PATH);
+        assetHelper.copyAllIfNew(Arrays.asList(first, second));
+
+        verify(osUtil, Mockito.times(2)).storeFileVersion(any(Context.class), anyString(), Mockito.anyInt(), anyString());
+        verify(osUtil, Mockito.times(1)).flushFileVersions(context);
+    }
+
+    @Test
+    public void onBatchCopyWithMissingAsset_failedResultShouldBeReturnedWithTheRest() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        when(osUtil.isFileAssetExists(context, TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME, TestConstants.FILE_EXTENSION)).thenReturn(false);
+        when(osUtil.generateFilePath(TestConstants.DESTINATION_FOLDER_PATH, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND))
+                .thenReturn(TestConstants.FILE_PATH_SECOND);
+
+        AssetCopyRequest missing = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        AssetCopyRequest second = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION_SECOND, TestConstants.DESTINATION_FOLDER_PATH);
+        Map<AssetCopyRequest, CopyFileToStorageResult> results = assetHelper.copyAllIfNew(Arrays.asList(missing, second));
+
+        Assert.assertEquals(AssetHelperStatus.FAILED, results.get(missing).getStatus());
+        Assert.assertNotNull(results.get(missing).getError());
+        Assert.assertEquals(AssetHelperStatus.INSTALLED, results.get(second).getStatus());
+        Assert.assertNull(results.get(second).getError());
+    }
+
+    @Test
+    public void onAsyncBatchCopyWithMissingAsset_failedResultShouldBeDelivered() {
+        when(osUtil.isFileAssetExists(context, TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME, TestConstants.FILE_EXTENSION)).thenReturn(false);
+        Executor directExecutor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        };
+        assetHelper.setCopyExecutor(directExecutor);
+        assetHelper.setCallbackExecutor(directExecutor);
+        final List<Map<AssetCopyRequest, CopyFileToStorageResult>> delivered = new ArrayList<>();
+
+        AssetCopyRequest missing = new AssetCopyRequest(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        assetHelper.copyAllIfNewAsync(Collections.singletonList(missing), new IAssetHelperBatchListener() {
+            @Override
+            public void onLoadedToStorage(Map<AssetCopyRequest, CopyFileToStorageResult> results) {
+                delivered.add(results);
+            }
+        });
+
+        Assert.assertEquals(1, delivered.size());
+        Assert.assertEquals(AssetHelperStatus.FAILED, delivered.get(0).get(missing).getStatus());
+    }
+
+    @Test
+    public void onAsyncCopyOfSameFile_copyShouldBeShared() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        final List<Runnable> tasks = new ArrayList<>();
+        assetHelper.setCopyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assetHelper.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        IAssetHelperStorageListener first = Mockito.mock(IAssetHelperStorageListener.class);
+        IAssetHelperStorageListener second = Mockito.mock(IAssetHelperStorageListener.class);
+
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, first);
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, second);
+        Assert.assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        verify(osUtil, Mockito.times(1))
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+        verify(first).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.INSTALLED);
+        verify(second).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.INSTALLED);
+    }
+
+    @Test
+    public void onAsyncCopyWithMissingAsset_failureShouldBeDeliveredToEveryCaller() {
+        when(osUtil.isFileAssetExists(context, TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME, TestConstants.FILE_EXTENSION)).thenReturn(false);
+        final List<Runnable> tasks = new ArrayList<>();
+        assetHelper.setCopyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assetHelper.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        IAssetHelperStorageListener first = Mockito.mock(IAssetHelperStorageListener.class);
+        IAssetHelperStorageListener second = Mockito.mock(IAssetHelperStorageListener.class);
+
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, first);
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, second);
+        tasks.get(0).run();
+
+        String path = new File(TestConstants.FILE_PATH).getAbsolutePath();
+        verify(first).onLoadedToStorage(path, AssetHelperStatus.FAILED);
+        verify(second).onLoadedToStorage(path, AssetHelperStatus.FAILED);
+    }
+
+    @Test
+    public void onCancelOfSharedCopy_onlyCancellingCallerShouldGetCancelled() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        final List<Runnable> tasks = new ArrayList<>();
+        assetHelper.setCopyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assetHelper.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        IAssetHelperStorageListener first = Mockito.mock(IAssetHelperStorageListener.class);
+        IAssetHelperStorageListener second = Mockito.mock(IAssetHelperStorageListener.class);
+
+        AssetCopyTask task = assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION,
+                TestConstants.DESTINATION_FOLDER_PATH, first);
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, second);
+        task.cancel();
+        tasks.get(0).run();
+
+        verify(first).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.CANCELLED);
+        verify(second).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.INSTALLED);
+    }
+
+    @Test
+    public void onCopyAfterAllCallersCancelled_newCopyShouldBeStarted() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        final List<Runnable> tasks = new ArrayList<>();
+        assetHelper.setCopyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assetHelper.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        IAssetHelperStorageListener first = Mockito.mock(IAssetHelperStorageListener.class);
+        IAssetHelperStorageListener second = Mockito.mock(IAssetHelperStorageListener.class);
+        IAssetHelperStorageListener third = Mockito.mock(IAssetHelperStorageListener.class);
+
+        AssetCopyTask task = assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION,
+                TestConstants.DESTINATION_FOLDER_PATH, first);
+        task.cancel();
+        // the cancelled copy hasn't left the in-flight copies yet
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, second);
+        Assert.assertEquals(2, tasks.size());
+        tasks.get(0).run();
+        // the end of the cancelled copy doesn't drop the new one
+        assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, third);
+        Assert.assertEquals(2, tasks.size());
+        tasks.get(1).run();
+
+        verify(first).onLoadedToStorage(new File(TestConstants.FILE_PATH).getAbsolutePath(), AssetHelperStatus.CANCELLED);
+        verify(second).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.INSTALLED);
+        verify(third).onLoadedToStorage(TestConstants.FILE_PATH, AssetHelperStatus.INSTALLED);
+        verify(osUtil, Mockito.times(1))
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+    }
+
+    @Test
+    public void onFileCheckedForInstalledApk_assetsShouldNotBeChecked() {
+        when(osUtil.isFileUpToDate(context, TestConstants.DESTINATION_FOLDER_PATH, TestConstants.FILE_NAME_WITH_EXTENSION)).thenReturn(true);
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.IGNORED, result.getStatus());
+        Assert.assertEquals(TestConstants.FILE_PATH, result.getPathToFile());
+        Assert.assertEquals(1, assetHelper.getFastPathHits());
+        verify(osUtil, Mockito.never()).getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString());
+        verify(osUtil, Mockito.never())
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+    }
+
+    @Test
+    public void onSameFileVersionArrived_fileShouldBeMarkedUpToDate() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+
         assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        verify(osUtil, Mockito.times(1)).markFileUpToDate(context, TestConstants.FILE_PATH);
+        Assert.assertEquals(1, assetHelper.getFastPathMisses());
+    }
+
+    @Test
+    public void onChecksumMismatch_corruptedStatusShouldBeReturned() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(1);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any()))
+                .thenThrow(new AssetIntegrityException("Checksum mismatch"));
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.CORRUPTED, result.getStatus());
+        verify(osUtil, Mockito.never()).storeFileVersion(any(Context.class), anyString(), Mockito.anyInt(), anyString());
+    }
+
+    @Test
+    public void onStorageBudget_accessOfUpToDateFileShouldBeRecorded() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        assetHelper.setStorageBudget(1024);
+
+        try {
+            assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        } finally {
+            assetHelper.setStorageBudget(0);
+        }
+
+        verify(osUtil, Mockito.times(1)).markFileAccessed(context, TestConstants.FILE_PATH, StorageBudget.ACCESS_RESOLUTION_MILLIS);
+    }
+
+    @Test
+    public void onNotEnoughSpace_distinctStatusShouldBeReturned() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(1);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any()))
+                .thenThrow(new InsufficientStorageException("Not enough space"));
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.NOT_ENOUGH_SPACE, result.getStatus());
+        verify(osUtil, Mockito.never()).storeFileVersion(any(Context.class), anyString(), Mockito.anyInt(), anyString());
+    }
+
+    @Test
+    public void onDamagedCopyWithIntegrityCheck_fileShouldBeLoadedAgain() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        when(osUtil.isFileIntact(context, TestConstants.FILE_PATH, false)).thenReturn(false);
+        assetHelper.setIntegrityCheck(IntegrityCheck.CRC32);
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.UPDATED, result.getStatus());
+        verify(osUtil, Mockito.times(1)).storeFileVersion(context, TestConstants.ASSET_FOLDER, 2, TestConstants.FILE_PATH);
+    }
+
+    @Test
+    public void onPatchApplied_fileShouldNotBeCopiedAgain() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(1);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+        when(osUtil.applyPatch(context, TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME, 1, 2, TestConstants.FILE_PATH)).thenReturn(true);
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.UPDATED, result.getStatus());
+        verify(osUtil, Mockito.never())
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+        verify(osUtil, Mockito.times(1)).storeFileVersion(context, TestConstants.ASSET_FOLDER, 2, TestConstants.FILE_PATH);
+    }
+
+    @Test
+    public void onOpenUncompressedAsset_handleShouldNotCopyFile() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        when(osUtil.isAssetUncompressed(context, TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME, TestConstants.FILE_EXTENSION)).thenReturn(true);
+
+        AssetHandle handle = assetHelper.open(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHandle.Backing.ASSET_FD, handle.getBacking());
+        verify(osUtil, Mockito.never())
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+    }
+
+    @Test
+    public void onOpenCopiedAsset_handleShouldUseFile() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+        when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+
+        AssetHandle handle = assetHelper.open(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHandle.Backing.FILE, handle.getBacking());
+        Assert.assertEquals(TestConstants.FILE_PATH, handle.getPath());
+    }
+
+    @Test
+    public void onHandleGetFile_assetShouldBeCopied() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+
+        AssetHandle handle = assetHelper.open(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+        Assert.assertEquals(AssetHandle.Backing.ASSET_STREAM, handle.getBacking());
+
+        Assert.assertEquals(TestConstants.FILE_PATH, handle.getFile().getPath());
+        Assert.assertEquals(AssetHandle.Backing.FILE, handle.getBacking());
+        verify(osUtil, Mockito.times(1))
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+    }
+
+    @Test
+    public void onMetricsListener_everyOperationShouldBeReported() {
+        final List<AssetOperationMetrics> operations = new ArrayList<>();
+        assetHelper.resetMetrics();
+        assetHelper.setMetricsListener(new IAssetHelperMetricsListener() {
+            @Override
+            public void onOperation(AssetOperationMetrics operation) {
+                operations.add(operation);
+            }
+        });
+        try {
+            when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+            assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+            when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(2);
+            when(osUtil.getAssetsFileVersion(any(Context.class), anyString(), anyString(), anyString())).thenReturn(2);
+            assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+            AssetHelperMetrics metrics = assetHelper.getMetrics();
+            Assert.assertEquals(1, metrics.getCount(AssetHelperStatus.INSTALLED));
+            Assert.assertEquals(1, metrics.getCount(AssetHelperStatus.IGNORED));
+            Assert.assertEquals(2, metrics.getPhaseCount(AssetPhase.FIND_ASSET));
+            Assert.assertEquals(1, metrics.getPhaseCount(AssetPhase.COPY));
+            Assert.assertEquals(2, operations.size());
+            Assert.assertEquals(AssetHelperStatus.INSTALLED, operations.get(0).getStatus());
+            Assert.assertEquals(TestConstants.FILE_PATH, operations.get(0).getFilePath());
+            Assert.assertEquals(0, operations.get(1).getPhaseNanos(AssetPhase.COPY));
+        } finally {
+            assetHelper.setMetricsListener(null);
+            assetHelper.resetMetrics();
+        }
+    }
+
+    @Test
+    public void onMetricsDisabled_nothingShouldBeCollected() {
+        assetHelper.resetMetrics();
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+
+        assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        AssetHelperMetrics metrics = assetHelper.getMetrics();
+        Assert.assertEquals(0, metrics.getCount(AssetHelperStatus.INSTALLED));
+        Assert.assertEquals(0, metrics.getPhaseCount(AssetPhase.COPY));
+    }
+
+    @Test
+    public void onCancelledAsyncCopy_cancelledStatusShouldBeDelivered() {
+        final List<Runnable> tasks = new ArrayList<>();
+        assetHelper.setCopyExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        });
+        assetHelper.setCallbackExecutor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        IAssetHelperStorageListener listener = Mockito.mock(IAssetHelperStorageListener.class);
+
+        AssetCopyTask task = assetHelper.copyFileToStorageAsync(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH, listener);
+        task.cancel();
+        tasks.get(0).run();
+
+        verify(osUtil, Mockito.never())
+                .loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any());
+        verify(listener).onLoadedToStorage(anyString(), Mockito.eq(AssetHelperStatus.CANCELLED));
+    }
+
+    @Test
+    public void onCopyCancelledWhileRunning_cancelledStatusShouldBeReturned() {
+        when(osUtil.getCurrentFileVersion(any(Context.class), anyString())).thenReturn(null);
+        when(osUtil.loadFileToLocalStorage(any(Context.class), anyString(), anyString(), anyString(), anyString(), Mockito.<CopyProgress>any()))
+                .thenThrow(new CopyCancelledException("The copy was cancelled"));
+
+        CopyFileToStorageResult result = assetHelper.copyIfNew(TestConstants.ASSET_FOLDER, TestConstants.FILE_NAME_WITH_EXTENSION, TestConstants.DESTINATION_FOLDER_PATH);
+
+        Assert.assertEquals(AssetHelperStatus.CANCELLED, result.getStatus());
+        verify(osUtil, Mockito.never()).storeFileVersion(any(Context.class), anyString(), Mockito.anyInt(), anyString());
+    }
+
+    /**
+     * Every copy gets a lock of its own file
+     */
+    private void mockProcessLocks() {
+        when(osUtil.lockDestination(any(Context.class), anyString())).thenAnswer(new Answer<ProcessLock>() {
+            @Override
+            public ProcessLock answer(InvocationOnMock invocation) throws IOException {
+                File lockFile = File.createTempFile("copy", Constants.LOCK_FILE_SUFFIX);
+                try {
+                    return ProcessLock.acquire(lockFile);
+                } finally {
+                    Assert.assertTrue(lockFile.delete());
+                }
+            }
+        });
     }
-}
\ No newline at end of file
+}
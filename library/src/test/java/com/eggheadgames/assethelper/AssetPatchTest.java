@@ -0,0 +1,131 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+public class AssetPatchTest {
+
+    private static final int BASE_SIZE = 1024 * 1024;
+    private static final int PAGE_SIZE = AssetPatch.DEFAULT_BLOCK_SIZE;
+
+    private File base;
+    private File target;
+    private File patch;
+    private File patched;
+    private byte[] baseContent;
+    private byte[] buffer;
+
+    @Before
+    public void init() throws IOException {
+        baseContent = new byte[BASE_SIZE];
+        new Random(42).nextBytes(baseContent);
+        base = File.createTempFile("base", ".sqlite");
+        target = File.createTempFile("target", ".sqlite");
+        patch = File.createTempFile("base", ".patch");
+        patched = File.createTempFile("patched", ".sqlite");
+        write(base, baseContent);
+        buffer = new byte[FileCopier.DEFAULT_BUFFER_SIZE];
+    }
+
+    @After
+    public void cleanUp() {
+        Assert.assertTrue(base.delete());
+        Assert.assertTrue(target.delete());
+        Assert.assertTrue(patch.delete());
+        Assert.assertTrue(patched.delete());
+    }
+
+    @Test
+    public void apply_ShouldTurnBaseIntoTarget() throws IOException {
+        byte[] targetContent = Arrays.copyOf(baseContent, BASE_SIZE + PAGE_SIZE + 100);
+        new Random(7).nextBytes(targetContent);
+        System.arraycopy(baseContent, 0, targetContent, 0, BASE_SIZE);
+        targetContent[10] ^= 1;
+        targetContent[5 * PAGE_SIZE + 1] ^= 1;
+        write(target, targetContent);
+
+        AssetPatch.create(base, target, patch);
+        // two changed pages and the appended tail
+        Assert.assertTrue(patch.length() < 4 * PAGE_SIZE);
+
+        applyPatch();
+        Assert.assertArrayEquals(targetContent, read(patched));
+        Assert.assertArrayEquals(baseContent, read(base));
+    }
+
+    @Test
+    public void apply_ShouldTruncateShorterTarget() throws IOException {
+        byte[] targetContent = Arrays.copyOf(baseContent, BASE_SIZE - PAGE_SIZE - 10);
+        targetContent[PAGE_SIZE] ^= 1;
+        write(target, targetContent);
+
+        AssetPatch.create(base, target, patch);
+        applyPatch();
+
+        Assert.assertArrayEquals(targetContent, read(patched));
+        Assert.assertArrayEquals(baseContent, read(base));
+    }
+
+    @Test(expected = IOException.class)
+    public void apply_OtherBase_ShouldFailTargetCheck() throws IOException {
+        byte[] targetContent = Arrays.copyOf(baseContent, BASE_SIZE);
+        targetContent[0] ^= 1;
+        write(target, targetContent);
+        AssetPatch.create(base, target, patch);
+
+        baseContent[PAGE_SIZE] ^= 1;
+        write(base, baseContent);
+        applyPatch();
+    }
+
+    @Test
+    public void header_ShouldDescribeBothVersions() throws IOException {
+        byte[] targetContent = Arrays.copyOf(baseContent, BASE_SIZE);
+        targetContent[0] ^= 1;
+        write(target, targetContent);
+
+        AssetPatch.create(base, target, patch);
+        DataInputStream in = new DataInputStream(new FileInputStream(patch));
+        AssetPatch.Header header = AssetPatch.readHeader(in);
+        in.close();
+
+        Assert.assertEquals(BASE_SIZE, header.baseLength);
+        Assert.assertEquals(AssetPatch.crc32(base, buffer), header.baseCrc32);
+        Assert.assertEquals(BASE_SIZE, header.targetLength);
+        Assert.assertEquals(AssetPatch.crc32(target, buffer), header.targetCrc32);
+    }
+
+    private void applyPatch() throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(patch)));
+        try {
+            AssetPatch.apply(in, AssetPatch.readHeader(in), base, patched, buffer);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        in.readFully(content);
+        in.close();
+        return content;
+    }
+}
@@ -0,0 +1,178 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AssetPrewarmerTest {
+
+    private AssetPrewarmer prewarmer;
+    private List<String> copied;
+    private CountDownLatch workerBlocked;
+    private CountDownLatch releaseWorker;
+
+    @Before
+    public void init() {
+        prewarmer = new AssetPrewarmer(new NamedThreadFactory("test-prewarm"));
+        copied = Collections.synchronizedList(new ArrayList<String>());
+        workerBlocked = new CountDownLatch(1);
+        releaseWorker = new CountDownLatch(1);
+    }
+
+    @Test
+    public void onQueuedCopies_higherPriorityShouldRunFirst() throws InterruptedException {
+        blockWorker();
+        prewarmer.submit("low", 1, copy("low"));
+        prewarmer.submit("high", 10, copy("high"));
+        prewarmer.submit("medium", 5, copy("medium"));
+        prewarmer.submit("low again", 1, copy("low again"));
+
+        releaseWorker.countDown();
+        awaitQueueDrained();
+
+        Assert.assertEquals(Arrays.asList("blocker", "high", "medium", "low", "low again"), copied);
+    }
+
+    @Test
+    public void onResubmitWithHigherPriority_copyShouldMoveUp() throws InterruptedException {
+        blockWorker();
+        prewarmer.submit("first", 5, copy("first"));
+        prewarmer.submit("second", 1, copy("second"));
+        prewarmer.submit("second", 10, copy("second"));
+
+        releaseWorker.countDown();
+        awaitQueueDrained();
+
+        Assert.assertEquals(Arrays.asList("blocker", "second", "first"), copied);
+    }
+
+    @Test
+    public void onClaimOfQueuedCopy_copyShouldRunOnCallerOnce() throws InterruptedException {
+        blockWorker();
+        final AtomicInteger runs = new AtomicInteger();
+        final Thread caller = Thread.currentThread();
+        prewarmer.submit("file", 1, new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() {
+                runs.incrementAndGet();
+                Assert.assertSame(caller, Thread.currentThread());
+                return new CopyFileToStorageResult("file", AssetHelperStatus.INSTALLED);
+            }
+        });
+
+        CopyFileToStorageResult result = prewarmer.claim("file");
+        releaseWorker.countDown();
+        awaitQueueDrained();
+
+        Assert.assertEquals(AssetHelperStatus.INSTALLED, result.getStatus());
+        Assert.assertEquals(1, runs.get());
+        Assert.assertNull(prewarmer.claim("file"));
+    }
+
+    @Test
+    public void onClaimOfRunningCopy_callerShouldGetItsResult() throws InterruptedException {
+        prewarmer.submit("blocker", 0, new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() throws InterruptedException {
+                workerBlocked.countDown();
+                releaseWorker.await();
+                return new CopyFileToStorageResult("blocker", AssetHelperStatus.UPDATED);
+            }
+        });
+        Assert.assertTrue(workerBlocked.await(5, TimeUnit.SECONDS));
+
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                releaseWorker.countDown();
+            }
+        });
+        releaser.start();
+
+        Assert.assertEquals(AssetHelperStatus.UPDATED, prewarmer.claim("blocker").getStatus());
+    }
+
+    @Test
+    public void onCancel_queuedCopiesShouldBeDropped() throws InterruptedException {
+        blockWorker();
+        prewarmer.submit("file", 1, copy("file"));
+
+        prewarmer.cancelQueued();
+        releaseWorker.countDown();
+
+        Assert.assertNull(prewarmer.claim("file"));
+        Assert.assertEquals(Collections.singletonList("blocker"), copied);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void onFailedCopy_claimShouldThrow() {
+        blockWorker();
+        prewarmer.submit("file", 1, new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() {
+                throw new IllegalStateException("failed");
+            }
+        });
+        try {
+            prewarmer.claim("file");
+        } finally {
+            releaseWorker.countDown();
+        }
+    }
+
+    /**
+     * Keeps the worker busy, so the next copies stay in the queue
+     */
+    private void blockWorker() {
+        prewarmer.submit("blocker", Integer.MAX_VALUE, new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() throws InterruptedException {
+                copied.add("blocker");
+                workerBlocked.countDown();
+                releaseWorker.await();
+                return new CopyFileToStorageResult("blocker", AssetHelperStatus.INSTALLED);
+            }
+        });
+        try {
+            Assert.assertTrue(workerBlocked.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void awaitQueueDrained() throws InterruptedException {
+        // the lowest priority copy runs after everything queued before it
+        final CountDownLatch drained = new CountDownLatch(1);
+        prewarmer.submit("marker", Integer.MIN_VALUE, new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() {
+                drained.countDown();
+                return new CopyFileToStorageResult("marker", AssetHelperStatus.IGNORED);
+            }
+        });
+        Assert.assertTrue(drained.await(5, TimeUnit.SECONDS));
+    }
+
+    private Callable<CopyFileToStorageResult> copy(final String name) {
+        return new Callable<CopyFileToStorageResult>() {
+            @Override
+            public CopyFileToStorageResult call() {
+                copied.add(name);
+                return new CopyFileToStorageResult(name, AssetHelperStatus.INSTALLED);
+            }
+        };
+    }
+}
@@ -0,0 +1,74 @@
+package com.eggheadgames.assethelper;
+
+import android.content.res.AssetFileDescriptor;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Assets held in memory, all of them compressed, i.e. they can't be opened as a file descriptor
+ */
+class FakeAssetSource implements AssetSource {
+
+    private final Map<String, String[]> listings = new ConcurrentHashMap<>();
+    private final Map<String, byte[]> contents = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, AtomicInteger> listCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the folder with the names as they are listed
+     */
+    FakeAssetSource folder(String path, String... names) {
+        listings.put(path, names);
+        return this;
+    }
+
+    /**
+     * Adds a file, its folder has to be added on its own
+     */
+    FakeAssetSource file(String path, byte[] content) {
+        contents.put(path, content);
+        return this;
+    }
+
+    /**
+     * @return how many times the folder was listed
+     */
+    int getListCount(String path) {
+        AtomicInteger count = listCounts.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public String[] list(String path) {
+        listCounts.putIfAbsent(path, new AtomicInteger());
+        listCounts.get(path).incrementAndGet();
+        String[] names = listings.get(path);
+        return names == null ? new String[0] : names.clone();
+    }
+
+    @Override
+    public InputStream open(String path) throws IOException {
+        byte[] content = contents.get(path);
+        if (content == null) {
+            throw new FileNotFoundException(path);
+        }
+        return openStream(path, content);
+    }
+
+    /**
+     * @return stream of the file, overridden to break it
+     */
+    InputStream openStream(String path, byte[] content) {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public AssetFileDescriptor openFd(String path) throws IOException {
+        throw new FileNotFoundException("Compressed asset: " + path);
+    }
+}
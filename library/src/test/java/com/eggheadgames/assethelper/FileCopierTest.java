@@ -0,0 +1,157 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+public class FileCopierTest {
+
+    private static final int SOURCE_SIZE = 8 * 1024 * 1024;
+    private static final int HEADER_SIZE = 4096;
+
+    private File source;
+    private File target;
+    private byte[] content;
+    private FileCopier fileCopier;
+
+    @Before
+    public void init() throws IOException {
+        content = new byte[SOURCE_SIZE];
+        new Random(42).nextBytes(content);
+
+        // the payload starts at an offset the same way an asset is stored inside an APK
+        source = File.createTempFile("asset", ".apk");
+        FileOutputStream fos = new FileOutputStream(source);
+        fos.write(new byte[HEADER_SIZE]);
+        fos.write(content);
+        fos.close();
+
+        target = File.createTempFile("asset", ".copy");
+        fileCopier = new FileCopier(FileCopier.DEFAULT_BUFFER_SIZE);
+    }
+
+    @After
+    public void cleanUp() {
+        Assert.assertTrue(source.delete());
+        Assert.assertTrue(target.delete());
+    }
+
+    @Test
+    public void transfer_ShouldCopyRequestedRange() throws IOException {
+        FileInputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        long copied = fileCopier.transfer(is.getChannel(), HEADER_SIZE, SOURCE_SIZE, fos.getChannel(), null);
+        is.close();
+        fos.close();
+
+        Assert.assertEquals(SOURCE_SIZE, copied);
+        Assert.assertArrayEquals(content, readTarget());
+    }
+
+    @Test(expected = IOException.class)
+    public void transfer_SourceIsShorter_ShouldThrowIOException() throws IOException {
+        FileInputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            fileCopier.transfer(is.getChannel(), HEADER_SIZE, SOURCE_SIZE + 1, fos.getChannel(), null);
+        } finally {
+            is.close();
+            fos.close();
+        }
+    }
+
+    @Test
+    public void copy_ShouldCopyWholeStreamAndReuseBuffer() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            FileInputStream is = new FileInputStream(source);
+            FileOutputStream fos = new FileOutputStream(target);
+            Assert.assertEquals(HEADER_SIZE, is.skip(HEADER_SIZE));
+            Assert.assertEquals(SOURCE_SIZE, fileCopier.copy(is, fos, null, null, -1));
+            is.close();
+            fos.close();
+        }
+
+        Assert.assertArrayEquals(content, readTarget());
+        // the buffer of the copies went back to the pool
+        BufferPool bufferPool = fileCopier.getBufferPool();
+        byte[] buffer = bufferPool.acquire();
+        bufferPool.release(buffer);
+        Assert.assertSame(buffer, bufferPool.acquire());
+    }
+
+    @Test
+    public void copyWithDigest_ShouldComputeChecksumOfCopiedBytes() throws IOException {
+        FileInputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        StreamDigest digest = StreamDigest.create(IntegrityCheck.CRC32);
+        fileCopier.copy(is, fos, digest, null, -1);
+        is.close();
+        fos.close();
+
+        CRC32 expected = new CRC32();
+        expected.update(new byte[HEADER_SIZE]);
+        expected.update(content);
+        Assert.assertEquals(StreamDigest.CRC32_PREFIX + Long.toHexString(expected.getValue()), digest.getValue());
+    }
+
+    @Test
+    public void copyDecoded_ShouldInflateGzipStream() throws IOException {
+        File compressed = File.createTempFile("asset", ".gz");
+        GZIPOutputStream gzip = new GZIPOutputStream(new FileOutputStream(compressed));
+        gzip.write(content);
+        gzip.close();
+
+        InputStream is = new GzipAssetDecoder().decode(new FileInputStream(compressed));
+        FileOutputStream fos = new FileOutputStream(target);
+        long copied = fileCopier.copy(is, fos, null, null, -1);
+        is.close();
+        fos.close();
+        Assert.assertTrue(compressed.delete());
+
+        Assert.assertEquals(SOURCE_SIZE, copied);
+        Assert.assertArrayEquals(content, readTarget());
+    }
+
+    @Test(expected = InterruptedIOException.class)
+    public void transfer_ProgressCancels_ShouldStopCopy() throws IOException {
+        FileInputStream is = new FileInputStream(source);
+        FileOutputStream fos = new FileOutputStream(target);
+        try {
+            fileCopier.transfer(is.getChannel(), HEADER_SIZE, SOURCE_SIZE, fos.getChannel(), new CopyProgress() {
+                @Override
+                public void onProgress(long bytesCopied, long totalBytes) throws InterruptedIOException {
+                    Assert.assertEquals(SOURCE_SIZE, totalBytes);
+                    throw new InterruptedIOException();
+                }
+            });
+        } finally {
+            is.close();
+            fos.close();
+            Assert.assertTrue(target.length() < SOURCE_SIZE);
+        }
+    }
+
+    private byte[] readTarget() throws IOException {
+        byte[] result = new byte[(int) target.length()];
+        InputStream is = new FileInputStream(target);
+        int offset = 0;
+        int length;
+        while (offset < result.length && (length = is.read(result, offset, result.length - offset)) >= 0) {
+            offset += length;
+        }
+        is.close();
+        return Arrays.copyOf(result, offset);
+    }
+}
@@ -0,0 +1,231 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FolderSyncTest {
+
+    private static final String TILES = "tiles";
+    private static final String ZOOM = TILES + File.separator + "zoom1";
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private PackageManager packageManager;
+
+    @Mock
+    private OsUtil osUtil;
+
+    @Mock
+    private AssetHelper assetHelper;
+
+    private ExecutorService executor;
+    private File destination;
+
+    @Before
+    public void init() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        destination = File.createTempFile("tiles", "");
+        Assert.assertTrue(destination.delete());
+        Assert.assertTrue(new File(destination, "zoom1").mkdirs());
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdownNow();
+        delete(destination);
+    }
+
+    @Test
+    public void listAssetFiles_shouldSkipVersionsSidecarsAndFolders() throws Exception {
+        when(context.getPackageManager()).thenReturn(packageManager);
+        when(context.getPackageName()).thenReturn("com.example");
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(new PackageInfo());
+        final FakeAssetSource assets = new FakeAssetSource()
+                .folder(TILES, "a_2.png", "a_2.png.sha256", "catalog_3.sqlite.gz", "catalog_2-3.patch", "zoom1", "readme")
+                .folder(ZOOM, "t_1.png");
+        OsUtil realOsUtil = new OsUtil() {
+            @Override
+            AssetSource getAssetSource(Context context) {
+                return assets;
+            }
+        };
+        realOsUtil.clearCache();
+
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("a.png", "catalog.sqlite", "readme")), realOsUtil.listAssetFiles(context, TILES));
+        Assert.assertEquals(Collections.singleton("zoom1"), realOsUtil.listAssetFolders(context, TILES));
+        Assert.assertEquals(Collections.singleton("t.png"), realOsUtil.listAssetFiles(context, ZOOM));
+    }
+
+    @Test
+    public void onSync_treeShouldBeCopiedAndStaleFilesDeleted() throws IOException {
+        mockTree();
+        File copied = write(new File(destination, "a.png"), 10);
+        File stale = write(new File(destination, "zoom1/old.png"), 1);
+        File untracked = write(new File(destination, "user.txt"), 1);
+        write(new File(destination, "zoom1/t.png" + Constants.LOCK_FILE_SUFFIX), 0);
+        when(assetHelper.copyIfNew(TILES, "a.png", destination.getPath(), true))
+                .thenReturn(new CopyFileToStorageResult(copied.getPath(), AssetHelperStatus.INSTALLED));
+        when(assetHelper.copyIfNew(ZOOM, "t.png", destination.getPath() + File.separator + "zoom1", true))
+                .thenReturn(new CopyFileToStorageResult("t.png", AssetHelperStatus.IGNORED));
+        when(osUtil.getFileAssetFolder(any(Context.class), anyString())).thenReturn(null);
+        when(osUtil.getFileAssetFolder(context, stale.getPath())).thenReturn(ZOOM);
+        when(osUtil.deleteFileIfUnlocked(context, stale.getPath())).thenReturn(true);
+
+        FolderSyncResult result = new FolderSync(assetHelper, osUtil, context, executor, new PathLocks()).run(TILES, destination.getPath(), true);
+
+        Assert.assertEquals(2, result.getFileCount());
+        Assert.assertEquals(1, result.getCount(AssetHelperStatus.INSTALLED));
+        Assert.assertEquals(1, result.getCount(AssetHelperStatus.IGNORED));
+        Assert.assertEquals(10, result.getBytesCopied());
+        Assert.assertEquals(1, result.getDeletedCount());
+        Assert.assertTrue(result.getFailures().isEmpty());
+        verify(osUtil).deleteFileIfUnlocked(context, stale.getPath());
+        verify(osUtil, never()).deleteFileIfUnlocked(context, untracked.getPath());
+        // the versions of the whole tree are written at once
+        verify(osUtil).flushFileVersions(context);
+    }
+
+    @Test
+    public void onFailedCopy_failureShouldBeReportedAndRestSynced() throws IOException {
+        mockTree();
+        File stale = write(new File(destination, "old.png"), 1);
+        File failed = write(new File(destination, "zoom1/t.png"), 1);
+        when(assetHelper.copyIfNew(anyString(), anyString(), anyString(), eq(true)))
+                .thenReturn(new CopyFileToStorageResult("a.png", AssetHelperStatus.IGNORED));
+        when(assetHelper.copyIfNew(ZOOM, "t.png", destination.getPath() + File.separator + "zoom1", true))
+                .thenThrow(new RuntimeException("Can't open the asset"));
+        when(osUtil.getFileAssetFolder(any(Context.class), anyString())).thenReturn(TILES);
+        when(osUtil.deleteFileIfUnlocked(context, stale.getPath())).thenReturn(true);
+
+        FolderSyncResult result = new FolderSync(assetHelper, osUtil, context, executor, new PathLocks()).run(TILES, destination.getPath(), true);
+
+        Assert.assertEquals(1, result.getCount(AssetHelperStatus.IGNORED));
+        Assert.assertEquals(1, result.getCount(AssetHelperStatus.FAILED));
+        Assert.assertEquals(1, result.getFailures().size());
+        Assert.assertEquals(failed.getPath(), result.getFailures().get(0).getPathToFile());
+        Assert.assertEquals("Can't open the asset", result.getFailures().get(0).getError().getMessage());
+        // the asset of the failed file still exists, so its previous copy is kept
+        Assert.assertEquals(1, result.getDeletedCount());
+        verify(osUtil, never()).deleteFileIfUnlocked(context, failed.getPath());
+    }
+
+    @Test
+    public void onFileCopiedFromAnotherAssetFolder_fileShouldBeKept() throws IOException {
+        mockTree();
+        File stale = write(new File(destination, "old.png"), 1);
+        // e.g. the main database copied by copyIfNew into the same folder
+        File database = write(new File(destination, "main.db"), 1);
+        File nested = write(new File(destination, "zoom1/main.db"), 1);
+        when(assetHelper.copyIfNew(anyString(), anyString(), anyString(), eq(true)))
+                .thenReturn(new CopyFileToStorageResult("a.png", AssetHelperStatus.IGNORED));
+        when(osUtil.getFileAssetFolder(context, stale.getPath())).thenReturn(TILES);
+        when(osUtil.getFileAssetFolder(context, database.getPath())).thenReturn("data");
+        when(osUtil.getFileAssetFolder(context, nested.getPath())).thenReturn(TILES);
+        when(osUtil.deleteFileIfUnlocked(context, stale.getPath())).thenReturn(true);
+
+        FolderSyncResult result = new FolderSync(assetHelper, osUtil, context, executor, new PathLocks()).run(TILES, destination.getPath(), true);
+
+        Assert.assertEquals(1, result.getDeletedCount());
+        verify(osUtil).deleteFileIfUnlocked(context, stale.getPath());
+        verify(osUtil, never()).deleteFileIfUnlocked(context, database.getPath());
+        // copied from the parent asset folder, so it isn't a file of the mirrored subfolder
+        verify(osUtil, never()).deleteFileIfUnlocked(context, nested.getPath());
+    }
+
+    @Test
+    public void onFailedListing_nothingShouldBeDeleted() throws IOException {
+        mockTree();
+        when(assetHelper.copyIfNew(anyString(), anyString(), anyString(), eq(true)))
+                .thenReturn(new CopyFileToStorageResult("a.png", AssetHelperStatus.IGNORED));
+        when(osUtil.listAssetFolders(context, ZOOM)).thenThrow(new IOException("Can't list"));
+
+        try {
+            new FolderSync(assetHelper, osUtil, context, executor, new PathLocks()).run(TILES, destination.getPath(), true);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        verify(osUtil, never()).deleteFileIfUnlocked(any(Context.class), anyString());
+    }
+
+    @Test
+    public void onStaleFileBeingCopied_fileShouldBeKept() throws IOException {
+        mockTree();
+        final File stale = write(new File(destination, "old.png"), 1);
+        when(assetHelper.copyIfNew(anyString(), anyString(), anyString(), eq(true)))
+                .thenReturn(new CopyFileToStorageResult("a.png", AssetHelperStatus.IGNORED));
+        when(osUtil.getFileAssetFolder(any(Context.class), anyString())).thenReturn(TILES);
+        final PathLocks pathLocks = new PathLocks();
+        // another thread copies the file, e.g. a copyIfNew of the app
+        Thread copier = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pathLocks.lock(stale.getPath());
+            }
+        });
+        copier.start();
+        try {
+            copier.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+
+        FolderSyncResult result = new FolderSync(assetHelper, osUtil, context, executor, pathLocks).run(TILES, destination.getPath(), true);
+
+        Assert.assertEquals(0, result.getDeletedCount());
+        verify(osUtil, never()).deleteFileIfUnlocked(context, stale.getPath());
+    }
+
+    private void mockTree() throws IOException {
+        when(osUtil.listAssetFiles(context, TILES)).thenReturn(Collections.singleton("a.png"));
+        when(osUtil.listAssetFolders(context, TILES)).thenReturn(Collections.singleton("zoom1"));
+        when(osUtil.listAssetFiles(context, ZOOM)).thenReturn(Collections.singleton("t.png"));
+        when(osUtil.listAssetFolders(context, ZOOM)).thenReturn(Collections.<String>emptySet());
+    }
+
+    private static File write(File file, int length) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(new byte[length]);
+        fos.close();
+        return file;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        Assert.assertTrue(file.delete());
+    }
+}
@@ -0,0 +1,77 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+public class MappedFileCacheTest {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int FILE_SIZE = 2 * CHUNK_SIZE + 100;
+
+    private File file;
+    private byte[] content;
+    private MappedFileCache cache;
+
+    @Before
+    public void init() throws IOException {
+        content = new byte[FILE_SIZE];
+        new Random(42).nextBytes(content);
+        file = File.createTempFile("table", ".bin");
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+        cache = new MappedFileCache(CHUNK_SIZE);
+    }
+
+    @After
+    public void cleanUp() {
+        Assert.assertTrue(file.delete());
+    }
+
+    @Test
+    public void map_LargeFile_ShouldBeSplitIntoChunks() throws IOException {
+        MappedAsset mapping = cache.get(file.getPath(), 1);
+
+        Assert.assertEquals(FILE_SIZE, mapping.getSize());
+        Assert.assertEquals(3, mapping.getChunkCount());
+        Assert.assertEquals(100, mapping.getChunk(2).remaining());
+        for (int i = 0; i < FILE_SIZE; i++) {
+            Assert.assertEquals(content[i], mapping.get(i));
+        }
+    }
+
+    @Test
+    public void getChunk_ShouldReturnIndependentReadOnlyBuffers() throws IOException {
+        MappedAsset mapping = cache.get(file.getPath(), 1);
+        ByteBuffer first = mapping.getChunk(0);
+        first.position(10);
+
+        ByteBuffer second = mapping.getChunk(0);
+        Assert.assertEquals(0, second.position());
+        Assert.assertTrue(second.isReadOnly());
+    }
+
+    @Test
+    public void get_SameVersion_ShouldReuseMapping() throws IOException {
+        MappedAsset mapping = cache.get(file.getPath(), 1);
+
+        Assert.assertSame(mapping, cache.get(file.getPath(), 1));
+        Assert.assertNotSame(mapping, cache.get(file.getPath(), 2));
+    }
+
+    @Test
+    public void get_AfterInvalidate_ShouldMapAgain() throws IOException {
+        MappedAsset mapping = cache.get(file.getPath(), 1);
+        cache.invalidate(file.getPath());
+
+        Assert.assertNotSame(mapping, cache.get(file.getPath(), 1));
+    }
+}
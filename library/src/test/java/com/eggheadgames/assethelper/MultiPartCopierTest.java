@@ -0,0 +1,141 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class MultiPartCopierTest {
+
+    private static final int[] PART_SIZES = {3 * 1024 * 1024, 1024 * 1024 + 17, 2 * 1024 * 1024 - 5, 100};
+
+    private final List<File> files = new ArrayList<>();
+    private ExecutorService executor;
+    private MultiPartCopier copier;
+    private FileCopier fileCopier;
+    private File target;
+    private byte[] content;
+
+    @Before
+    public void init() throws IOException {
+        executor = Executors.newFixedThreadPool(4);
+        copier = new MultiPartCopier(executor);
+        fileCopier = new FileCopier(FileCopier.DEFAULT_BUFFER_SIZE);
+        int length = 0;
+        for (int size : PART_SIZES) {
+            length += size;
+        }
+        content = new byte[length];
+        new Random(42).nextBytes(content);
+        target = createFile("target");
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdownNow();
+        for (File file : files) {
+            Assert.assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void copy_ShouldPutPartsTogetherInOrder() throws IOException {
+        List<MultiPartCopier.Part> parts = new ArrayList<>();
+        int offset = 0;
+        for (int i = 0; i < PART_SIZES.length; i++) {
+            byte[] partContent = Arrays.copyOfRange(content, offset, offset + PART_SIZES[i]);
+            parts.add(new FilePart(partContent));
+            offset += PART_SIZES[i];
+        }
+
+        long copied = copy(parts);
+
+        Assert.assertEquals(content.length, copied);
+        Assert.assertArrayEquals(content, read(target));
+    }
+
+    @Test(expected = IOException.class)
+    public void copy_OnFailedPart_ShouldThrow() throws IOException {
+        List<MultiPartCopier.Part> parts = new ArrayList<>();
+        parts.add(new FilePart(Arrays.copyOf(content, PART_SIZES[0])));
+        parts.add(new MultiPartCopier.Part() {
+            @Override
+            public long getLength() {
+                return 10;
+            }
+
+            @Override
+            public void copyTo(FileChannel target, long position, CopyProgress progress) throws IOException {
+                throw new IOException("Can't read the part");
+            }
+        });
+
+        copy(parts);
+    }
+
+    private long copy(List<MultiPartCopier.Part> parts) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            return copier.copy(parts, file.getChannel(), null);
+        } finally {
+            file.close();
+        }
+    }
+
+    private File createFile(String prefix) throws IOException {
+        File file = File.createTempFile(prefix, ".part");
+        files.add(file);
+        return file;
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] bytes = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        in.readFully(bytes);
+        in.close();
+        return bytes;
+    }
+
+    private class FilePart implements MultiPartCopier.Part {
+
+        private final File file;
+        private final long length;
+
+        FilePart(byte[] partContent) throws IOException {
+            file = createFile("file");
+            FileOutputStream fos = new FileOutputStream(file);
+            fos.write(partContent);
+            fos.close();
+            length = partContent.length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public void copyTo(FileChannel target, long position, CopyProgress progress) throws IOException {
+            FileInputStream is = new FileInputStream(file);
+            try {
+                fileCopier.transferAt(is.getChannel(), length, target, position, progress);
+            } finally {
+                is.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Random;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OsUtilTest {
+
+    private static final String ASSET_FOLDER = "staged";
+    private static final String ASSET_NAME = "data_2.db";
+    private static final int ASSET_SIZE = 256 * 1024;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private PackageManager packageManager;
+
+    private FakeAssetSource assets;
+    private OsUtil osUtil;
+    private File folder;
+    private File destination;
+    private File tempFile;
+    private byte[] content;
+
+    @Before
+    public void init() throws Exception {
+        content = new byte[ASSET_SIZE];
+        new Random(42).nextBytes(content);
+        folder = File.createTempFile("staged", "");
+        Assert.assertTrue(folder.delete());
+        Assert.assertTrue(folder.mkdirs());
+        destination = new File(folder, "data.db");
+        tempFile = new File(destination.getPath() + Constants.TEMP_FILE_SUFFIX);
+
+        when(context.getPackageManager()).thenReturn(packageManager);
+        when(context.getPackageName()).thenReturn("com.example");
+        when(packageManager.getPackageInfo(anyString(), anyInt())).thenReturn(new PackageInfo());
+        // compressed in the APK, so it's copied as a stream
+        assets = new FakeAssetSource().folder(ASSET_FOLDER, ASSET_NAME);
+        osUtil = new OsUtil() {
+            @Override
+            AssetSource getAssetSource(Context context) {
+                return assets;
+            }
+        };
+        osUtil.clearCache();
+    }
+
+    @After
+    public void cleanUp() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                Assert.assertTrue(child.delete());
+            }
+        }
+        Assert.assertTrue(folder.delete());
+    }
+
+    @Test
+    public void onCopy_tempFileShouldBeRenamedIntoPlace() throws IOException {
+        mockAsset(content.length);
+
+        Assert.assertEquals(destination.getPath(), copy(null));
+        Assert.assertArrayEquals(content, read(destination));
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void onCopyOverLongerFile_fileShouldHaveNewLength() throws IOException {
+        write(destination, new byte[ASSET_SIZE * 2]);
+        // a temp file left by a killed copy is overwritten as well
+        write(tempFile, new byte[ASSET_SIZE * 3]);
+        mockAsset(content.length);
+
+        copy(null);
+        Assert.assertArrayEquals(content, read(destination));
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void onCopyOfOpenFile_readerShouldKeepOldContent() throws IOException {
+        byte[] oldContent = new byte[ASSET_SIZE];
+        write(destination, oldContent);
+        mockAsset(content.length);
+
+        DataInputStream reader = new DataInputStream(new FileInputStream(destination));
+        try {
+            copy(null);
+            byte[] read = new byte[ASSET_SIZE];
+            reader.readFully(read);
+            Assert.assertArrayEquals(oldContent, read);
+        } finally {
+            reader.close();
+        }
+        Assert.assertArrayEquals(content, read(destination));
+    }
+
+    @Test
+    public void onFailedCopy_oldFileShouldBeKept() throws IOException {
+        byte[] oldContent = new byte[ASSET_SIZE / 2];
+        write(destination, oldContent);
+        // the stream breaks half way
+        mockAsset(content.length / 2);
+
+        try {
+            copy(null);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertTrue(e.getCause() instanceof IOException);
+        }
+        Assert.assertArrayEquals(oldContent, read(destination));
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void onCancelledCopy_oldFileShouldBeKept() throws IOException {
+        byte[] oldContent = new byte[ASSET_SIZE / 2];
+        write(destination, oldContent);
+        mockAsset(content.length);
+
+        try {
+            copy(new CopyProgress() {
+                @Override
+                public void onProgress(long bytesCopied, long totalBytes) throws InterruptedIOException {
+                    throw new InterruptedIOException();
+                }
+            });
+            Assert.fail();
+        } catch (CopyCancelledException ignored) {
+        }
+        Assert.assertArrayEquals(oldContent, read(destination));
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    @Test
+    public void onOrphanedTempFile_tempFileShouldBeDeleted() throws IOException {
+        write(destination, content);
+        write(tempFile, new byte[10]);
+        File userFile = new File(folder, "user.txt");
+        write(userFile, new byte[10]);
+
+        osUtil.deleteOrphanedTempFiles(folder.getPath());
+
+        Assert.assertFalse(tempFile.exists());
+        Assert.assertArrayEquals(content, read(destination));
+        Assert.assertTrue(userFile.exists());
+    }
+
+    private String copy(CopyProgress progress) {
+        return osUtil.loadFileToLocalStorage(context, ASSET_FOLDER, "data", "db", destination.getPath(), progress);
+    }
+
+    /**
+     * @param failAfter number of bytes after which the stream fails, the whole asset is read if it's the asset size
+     */
+    private void mockAsset(final int failAfter) {
+        assets = new FakeAssetSource() {
+            @Override
+            InputStream openStream(String path, byte[] content) {
+                return new ByteArrayInputStream(content) {
+                    @Override
+                    public int read(byte[] buffer) throws IOException {
+                        if (pos >= failAfter && pos < count) {
+                            throw new IOException("Asset stream broke");
+                        }
+                        return read(buffer, 0, Math.min(buffer.length, pos < failAfter ? failAfter - pos : buffer.length));
+                    }
+                };
+            }
+        }.folder(ASSET_FOLDER, ASSET_NAME).file(ASSET_FOLDER + File.separator + ASSET_NAME, content);
+    }
+
+    private static void write(File file, byte[] content) throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(content);
+        fos.close();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] result = new byte[(int) file.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(result);
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,148 @@
+package com.eggheadgames.assethelper;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+
+public class ProcessLockTest {
+
+    private File folder;
+    private File destination;
+    private File lockFile;
+
+    @Before
+    public void init() throws IOException {
+        folder = File.createTempFile("locks", "");
+        Assert.assertTrue(folder.delete());
+        destination = new File(folder, TestConstants.FILE_NAME_WITH_EXTENSION);
+        lockFile = new File(destination.getPath() + Constants.LOCK_FILE_SUFFIX);
+    }
+
+    @After
+    public void cleanUp() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                Assert.assertTrue(child.delete());
+            }
+        }
+        Assert.assertTrue(!folder.exists() || folder.delete());
+    }
+
+    @Test
+    public void tryAcquire_HeldLock_ShouldReturnNull() throws Exception {
+        ProcessLock lock = ProcessLock.acquire(lockFile);
+        Assert.assertNull(ProcessLock.tryAcquire(lockFile));
+        // the failed attempt must not drop the lock held by this process
+        Assert.assertFalse(canLockInAnotherProcess(lockFile));
+        lock.release();
+
+        ProcessLock reacquired = ProcessLock.tryAcquire(lockFile);
+        Assert.assertNotNull(reacquired);
+        reacquired.release();
+    }
+
+    @Test
+    public void tryAcquire_HeldLockThroughAnotherPath_ShouldReturnNull() throws Exception {
+        ProcessLock lock = ProcessLock.acquire(lockFile);
+        File samePath = new File(new File(folder, "."), lockFile.getName());
+        Assert.assertNull(ProcessLock.tryAcquire(samePath));
+        Assert.assertFalse(canLockInAnotherProcess(lockFile));
+        lock.release();
+    }
+
+    @Test
+    public void acquire_HeldLock_ShouldWaitForRelease() throws Exception {
+        final ProcessLock lock = ProcessLock.acquire(lockFile);
+        Thread releaser = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException ignored) {
+                }
+                lock.releaseAndDelete();
+            }
+        });
+        releaser.start();
+
+        ProcessLock next = ProcessLock.acquire(lockFile);
+        Assert.assertTrue(lockFile.exists());
+        Assert.assertFalse(canLockInAnotherProcess(lockFile));
+        next.release();
+        releaser.join();
+    }
+
+    @Test
+    public void releaseAndDelete_ShouldRemoveLockFile() throws IOException {
+        ProcessLock lock = ProcessLock.acquire(lockFile);
+        lock.releaseAndDelete();
+        Assert.assertFalse(lockFile.exists());
+
+        ProcessLock next = ProcessLock.tryAcquire(lockFile);
+        Assert.assertNotNull(next);
+        next.release();
+    }
+
+    @Test
+    public void deleteOrphanedTempFiles_LockFileOfMissingDestination_ShouldBeDeleted() throws IOException {
+        File otherLockFile = new File(folder, "other.db" + Constants.LOCK_FILE_SUFFIX);
+        ProcessLock.acquire(lockFile).release();
+        ProcessLock.acquire(otherLockFile).release();
+        Assert.assertTrue(new File(folder, "other.db").createNewFile());
+
+        new OsUtil().deleteOrphanedTempFiles(folder.getPath());
+        Assert.assertFalse(lockFile.exists());
+        Assert.assertTrue(otherLockFile.exists());
+    }
+
+    @Test
+    public void deleteOrphanedTempFiles_TempFileOfRunningCopy_ShouldBeKept() throws IOException {
+        File tempFile = new File(destination.getPath() + Constants.TEMP_FILE_SUFFIX);
+        ProcessLock lock = ProcessLock.acquire(lockFile);
+        Assert.assertTrue(tempFile.createNewFile());
+
+        new OsUtil().deleteOrphanedTempFiles(folder.getPath());
+        Assert.assertTrue(tempFile.exists());
+
+        lock.release();
+        new OsUtil().deleteOrphanedTempFiles(folder.getPath());
+        Assert.assertFalse(tempFile.exists());
+    }
+
+    /**
+     * File locks are held per process, so only another process can tell whether this one still holds the lock
+     */
+    private static boolean canLockInAnotherProcess(File lockFile) throws Exception {
+        String javaPath = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        String classPath = new File(LockProbe.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+        Process process = new ProcessBuilder(javaPath, "-cp", classPath, LockProbe.class.getName(), lockFile.getPath())
+                .redirectErrorStream(true)
+                .start();
+        int exitCode = process.waitFor();
+        Assert.assertTrue("Lock probe failed: " + exitCode, exitCode == LockProbe.LOCKED || exitCode == LockProbe.BUSY);
+        return exitCode == LockProbe.LOCKED;
+    }
+
+    public static class LockProbe {
+
+        static final int LOCKED = 10;
+        static final int BUSY = 11;
+
+        public static void main(String[] args) throws IOException {
+            RandomAccessFile file = new RandomAccessFile(args[0], "rw");
+            try {
+                FileLock lock = file.getChannel().tryLock();
+                System.exit(lock != null ? LOCKED : BUSY);
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
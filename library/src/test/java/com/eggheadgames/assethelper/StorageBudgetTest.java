@@ -0,0 +1,136 @@
+package com.eggheadgames.assethelper;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class StorageBudgetTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Mock
+    private Context context;
+
+    @Mock
+    private OsUtil osUtil;
+
+    private final Map<String, VersionManifest.Record> records = new HashMap<>();
+    private StorageBudget storageBudget;
+    private File folder;
+    private long now;
+
+    @Before
+    public void init() throws IOException {
+        folder = File.createTempFile("budget", "");
+        Assert.assertTrue(folder.delete());
+        Assert.assertTrue(folder.mkdirs());
+        now = System.currentTimeMillis();
+
+        when(osUtil.getCopiedFiles(context)).thenReturn(records);
+        when(osUtil.deleteFileIfUnlocked(any(Context.class), anyString())).thenReturn(true);
+        storageBudget = new StorageBudget(new PathLocks(), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                command.run();
+            }
+        });
+        storageBudget.setBudget(250);
+    }
+
+    @After
+    public void cleanUp() {
+        for (File file : folder.listFiles()) {
+            Assert.assertTrue(file.delete());
+        }
+        Assert.assertTrue(folder.delete());
+    }
+
+    @Test
+    public void onBudgetExceeded_leastRecentlyUsedFilesShouldBeRemoved() throws IOException {
+        String oldest = addFile("oldest", 100, now - 3 * HOUR);
+        String older = addFile("older", 100, now - 2 * HOUR);
+        String old = addFile("old", 100, now - HOUR);
+
+        Assert.assertEquals(1, storageBudget.trim(context, osUtil));
+
+        verify(osUtil).deleteFileIfUnlocked(context, oldest);
+        verify(osUtil, never()).deleteFileIfUnlocked(context, older);
+        verify(osUtil, never()).deleteFileIfUnlocked(context, old);
+    }
+
+    @Test
+    public void onBudgetExceeded_pinnedMappedAndOpenFilesShouldBeKept() throws IOException {
+        String pinned = addFile("pinned", 100, now - 5 * HOUR);
+        String mapped = addFile("mapped", 100, now - 4 * HOUR);
+        String open = addFile("open", 100, now - 3 * HOUR);
+        String old = addFile("old", 100, now - 2 * HOUR);
+        storageBudget.pin(pinned);
+        when(osUtil.isFileMapped(mapped)).thenReturn(true);
+        storageBudget.acquire(open);
+
+        Assert.assertEquals(1, storageBudget.trim(context, osUtil));
+
+        verify(osUtil).deleteFileIfUnlocked(context, old);
+        verify(osUtil, never()).deleteFileIfUnlocked(context, pinned);
+        verify(osUtil, never()).deleteFileIfUnlocked(context, mapped);
+        verify(osUtil, never()).deleteFileIfUnlocked(context, open);
+    }
+
+    @Test
+    public void onReleasedHandle_fileShouldBeRemoved() throws IOException {
+        String open = addFile("open", 200, now - 2 * HOUR);
+        addFile("new", 100, now - HOUR);
+        storageBudget.acquire(open);
+        storageBudget.release(open);
+
+        Assert.assertEquals(1, storageBudget.trim(context, osUtil));
+        verify(osUtil).deleteFileIfUnlocked(context, open);
+    }
+
+    @Test
+    public void onRecentAccess_fileShouldBeKeptOverBudget() throws IOException {
+        addFile("first", 200, now);
+        addFile("second", 200, now);
+
+        Assert.assertEquals(0, storageBudget.trim(context, osUtil));
+        verify(osUtil, never()).deleteFileIfUnlocked(any(Context.class), anyString());
+    }
+
+    @Test
+    public void onNoBudget_nothingShouldBeRemoved() throws IOException {
+        addFile("oldest", 1000, now - 3 * HOUR);
+        storageBudget.setBudget(0);
+
+        Assert.assertEquals(0, storageBudget.trim(context, osUtil));
+        storageBudget.onAccess(context, osUtil, "oldest");
+        verify(osUtil, never()).deleteFileIfUnlocked(any(Context.class), anyString());
+        verify(osUtil, never()).markFileAccessed(any(Context.class), anyString(), anyLong());
+    }
+
+    private String addFile(String name, long size, long lastAccess) throws IOException {
+        File file = new File(folder, name);
+        Assert.assertTrue(file.createNewFile());
+        records.put(file.getPath(), new VersionManifest.Record(1, size, lastAccess, null, null, lastAccess, null));
+        return file.getPath();
+    }
+}
@@ -9,4 +9,7 @@ interface TestConstants {
     String DESTINATION_FOLDER_PATH = "folder";
     String FILE_PATH = DESTINATION_FOLDER_PATH + "/filename.ext";
     String FILE_EXTENSION = "ext";
+
+    String FILE_NAME_WITH_EXTENSION_SECOND = "second.ext";
+    String FILE_PATH_SECOND = DESTINATION_FOLDER_PATH + "/second.ext";
 }
@@ -0,0 +1,209 @@
+package com.eggheadgames.assethelper;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class VersionManifestTest {
+
+    @Mock
+    private SharedPreferences preferences;
+
+    @Mock
+    private SharedPreferences.Editor editor;
+
+    private final Executor directExecutor = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+    private File folder;
+    private File file;
+
+    @Before
+    public void init() throws IOException {
+        folder = File.createTempFile("manifest", "");
+        Assert.assertTrue(folder.delete());
+        file = new File(folder, "versions.manifest");
+    }
+
+    @After
+    public void cleanUp() {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                Assert.assertTrue(child.delete());
+            }
+        }
+        Assert.assertTrue(!folder.exists() || folder.delete());
+    }
+
+    @Test
+    public void onFlush_recordsShouldBeReadByNextProcess() throws IOException {
+        doReturn(new HashMap<String, Object>()).when(preferences).getAll();
+        VersionManifest manifest = createManifest();
+        manifest.put(TestConstants.FILE_PATH, new VersionManifest.Record(3, 100, 200, "crc32:1234", "2:300", 400, "data"));
+        manifest.put(TestConstants.FILE_PATH_SECOND, new VersionManifest.Record(5, 10, 20, null, null));
+        manifest.flush();
+
+        VersionManifest reloaded = new VersionManifest(file, null, directExecutor);
+        VersionManifest.Record record = reloaded.get(TestConstants.FILE_PATH);
+        Assert.assertEquals(3, record.version);
+        Assert.assertEquals(100, record.size);
+        Assert.assertEquals(200, record.lastModified);
+        Assert.assertEquals("crc32:1234", record.checksum);
+        Assert.assertEquals("2:300", record.apkStamp);
+        Assert.assertEquals(400, record.lastAccess);
+        Assert.assertEquals("data", record.assetFolder);
+        Assert.assertEquals(Integer.valueOf(5), reloaded.getVersion(TestConstants.FILE_PATH_SECOND));
+        Assert.assertEquals(20, reloaded.get(TestConstants.FILE_PATH_SECOND).lastAccess);
+        Assert.assertNull(reloaded.get(TestConstants.FILE_PATH_SECOND).checksum);
+        Assert.assertNull(reloaded.get(TestConstants.FILE_PATH_SECOND).assetFolder);
+    }
+
+    @Test
+    public void onMissingRecord_versionShouldBeNull() {
+        doReturn(new HashMap<String, Object>()).when(preferences).getAll();
+
+        Assert.assertNull(createManifest().getVersion(TestConstants.FILE_PATH));
+    }
+
+    @Test
+    public void onFirstAccess_legacyVersionsShouldBeMigrated() throws IOException {
+        Map<String, Object> legacy = new HashMap<>();
+        legacy.put(Constants.PREFERENCES_FILE_VERSION + TestConstants.FILE_PATH, 7);
+        legacy.put("unrelated_preference", 1);
+        doReturn(legacy).when(preferences).getAll();
+        when(preferences.edit()).thenReturn(editor);
+
+        VersionManifest manifest = createManifest();
+        Assert.assertEquals(Integer.valueOf(7), manifest.getVersion(TestConstants.FILE_PATH));
+        manifest.flush();
+
+        verify(editor).remove(Constants.PREFERENCES_FILE_VERSION + TestConstants.FILE_PATH);
+        verify(editor, never()).remove("unrelated_preference");
+        verify(editor).apply();
+        Assert.assertEquals(Integer.valueOf(7), new VersionManifest(file, null, directExecutor).getVersion(TestConstants.FILE_PATH));
+    }
+
+    @Test
+    public void onFlushInAnotherProcess_recordsShouldBeMerged() throws IOException {
+        doReturn(new HashMap<String, Object>()).when(preferences).getAll();
+        VersionManifest first = createManifest();
+        first.put(TestConstants.FILE_PATH, new VersionManifest.Record(3, 100, 200, null, null));
+        first.flush();
+
+        // another process with a manifest of its own
+        VersionManifest second = new VersionManifest(file, null, directExecutor);
+        second.put(TestConstants.FILE_PATH_SECOND, new VersionManifest.Record(5, 10, 20, null, null));
+        second.flush();
+        Assert.assertEquals(Integer.valueOf(3), second.getVersion(TestConstants.FILE_PATH));
+
+        first.refresh();
+        Assert.assertEquals(Integer.valueOf(5), first.getVersion(TestConstants.FILE_PATH_SECOND));
+        Assert.assertEquals(Integer.valueOf(3), first.getVersion(TestConstants.FILE_PATH));
+    }
+
+    @Test
+    public void onRefresh_changesNotWrittenYetShouldBeKept() throws IOException {
+        doReturn(new HashMap<String, Object>()).when(preferences).getAll();
+        final List<Runnable> pendingWrites = new ArrayList<>();
+        VersionManifest first = new VersionManifest(file, null, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                pendingWrites.add(command);
+            }
+        }) {
+            @Override
+            SharedPreferences getLegacyPreferences() {
+                return preferences;
+            }
+        };
+        first.put(TestConstants.FILE_PATH, new VersionManifest.Record(3, 100, 200, null, null));
+
+        VersionManifest second = createManifest();
+        second.put(TestConstants.FILE_PATH, new VersionManifest.Record(2, 100, 200, null, null));
+        second.put(TestConstants.FILE_PATH_SECOND, new VersionManifest.Record(5, 10, 20, null, null));
+        second.flush();
+
+        first.refresh();
+        Assert.assertEquals(Integer.valueOf(3), first.getVersion(TestConstants.FILE_PATH));
+        Assert.assertEquals(Integer.valueOf(5), first.getVersion(TestConstants.FILE_PATH_SECOND));
+        Assert.assertEquals(1, pendingWrites.size());
+    }
+
+    @Test
+    public void onFlushWhileBackgroundWriteIsPending_recordShouldBeWrittenRightAway() throws Exception {
+        doReturn(new HashMap<String, Object>()).when(preferences).getAll();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        final CountDownLatch releaseWriter = new CountDownLatch(1);
+        try {
+            // the background writer is busy, so only the flush itself can write the record
+            writer.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        releaseWriter.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            VersionManifest manifest = new VersionManifest(file, null, writer) {
+                @Override
+                SharedPreferences getLegacyPreferences() {
+                    return preferences;
+                }
+            };
+            manifest.put(TestConstants.FILE_PATH, new VersionManifest.Record(3, 100, 200, null, null));
+            manifest.flush();
+
+            Assert.assertEquals(Integer.valueOf(3), new VersionManifest(file, null, directExecutor).getVersion(TestConstants.FILE_PATH));
+
+            long lastModified = file.lastModified();
+            releaseWriter.countDown();
+            writer.shutdown();
+            Assert.assertTrue(writer.awaitTermination(5, TimeUnit.SECONDS));
+            // the scheduled write has nothing left to write
+            Assert.assertEquals(lastModified, file.lastModified());
+            Assert.assertEquals(Integer.valueOf(3), new VersionManifest(file, null, directExecutor).getVersion(TestConstants.FILE_PATH));
+        } finally {
+            releaseWriter.countDown();
+            writer.shutdownNow();
+        }
+    }
+
+    private VersionManifest createManifest() {
+        return new VersionManifest(file, null, directExecutor) {
+            @Override
+            SharedPreferences getLegacyPreferences() {
+                return preferences;
+            }
+        };
+    }
+}